@@ -0,0 +1,109 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberJpaRepository;
+import study.querydsl.respository.MemberRepository;
+
+import javax.persistence.EntityManager;
+
+/*
+ *  벤치마크마다 공유하는 스프링 컨텍스트 + 인메모리 H2
+ *  memberCount 마다 컨텍스트를 새로 띄우고 데이터를 넣는다.
+ *
+ *  - 운영 설정(TCP H2, p6spy, SQL 로그)은 측정값을 흐리기 때문에 끈다.
+ *  - 조회 경로를 바꾸는 기능(count 캐시, 병렬 count, ...)은 기본값이 바뀌어도 같은 코드를 측정하도록 모두 고정한다.
+ *    -> 새로 추가하는 기능 플래그도 여기에 추가한다.
+ *  - application.yml 보다 우선하도록 커맨드라인 인자로 넘긴다. (SpringApplicationBuilder.properties는 기본값이라 yml에 덮인다.)
+ * */
+@State(Scope.Benchmark)
+public class BenchmarkState {
+
+    static final int TEAM_COUNT = 10;
+
+    private static final String[] SETTINGS = {
+            // 실행 환경
+            "--spring.profiles.active=benchmark",
+            "--spring.main.banner-mode=off",
+            "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+            "--spring.jpa.hibernate.ddl-auto=create",
+            "--spring.jpa.properties.hibernate.format_sql=false",
+            "--spring.jpa.properties.hibernate.jdbc.batch_size=500",
+            "--spring.jpa.properties.hibernate.generate_statistics=false",
+            "--decorator.datasource.enabled=false",
+            "--logging.level.root=warn",
+            "--logging.level.org.hibernate.SQL=warn",
+            // 조회 경로를 바꾸는 기능 -> 모두 끄거나 기본 동작으로 고정
+            "--querydsl.count-cache.enabled=false",
+            "--querydsl.parallel-count.enabled=false",
+            "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+            "--spring.jpa.properties.hibernate.cache.use_query_cache=false",
+            "--querydsl.slow-query.explain=false",
+            "--querydsl.count.policy=exact",
+            "--querydsl.datasource.read-your-writes.enabled=false",
+            "--querydsl.async.virtual-threads=false",
+            "--querydsl.snapshot.enabled=false",
+            "--querydsl.single-flight.enabled=false",
+            "--querydsl.statement-budget.mode=off"
+    };
+
+    @Param({"100", "1000", "10000"})
+    public int memberCount;
+
+    private ConfigurableApplicationContext context;
+
+    EntityManager em;
+    JPAQueryFactory queryFactory;
+    MemberJpaRepository memberJpaRepository;
+    MemberRepository memberRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(SETTINGS);
+
+        em = context.getBean(EntityManager.class);
+        queryFactory = context.getBean(JPAQueryFactory.class);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        memberRepository = context.getBean(MemberRepository.class);
+
+        insertMembers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    String username(int index) {
+        return "member" + index;
+    }
+
+    private void insertMembers() {
+        new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).executeWithoutResult(status -> {
+            Team[] teams = new Team[TEAM_COUNT];
+            for (int i = 0; i < TEAM_COUNT; i++) {
+                teams[i] = new Team("team" + i);
+                em.persist(teams[i]);
+            }
+
+            for (int i = 0; i < memberCount; i++) {
+                em.persist(new Member(username(i), i % 100, teams[i % TEAM_COUNT]));
+            }
+        });
+    }
+}
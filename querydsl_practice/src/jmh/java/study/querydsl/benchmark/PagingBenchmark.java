@@ -0,0 +1,55 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+/*
+ *  MemberRepositoryImpl.searchPageSimple vs searchPageComplex
+ *  - firstPage : content가 pageSize 보다 적으면 searchPageComplex는 count 쿼리를 생략할 수 있다.
+ *  - middlePage : 두 방식 모두 count 쿼리를 실행한다.
+ * */
+@State(Scope.Thread)
+public class PagingBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    private MemberSearchCondition condition;
+    private Pageable firstPage;
+    private Pageable middlePage;
+
+    @Setup
+    public void setUp(BenchmarkState state) {
+        condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+
+        firstPage = PageRequest.of(0, PAGE_SIZE);
+        middlePage = PageRequest.of(state.memberCount / PAGE_SIZE / 2, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageSimpleFirst(BenchmarkState state) {
+        return state.memberRepository.searchPageSimple(condition, firstPage);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageComplexFirst(BenchmarkState state) {
+        return state.memberRepository.searchPageComplex(condition, firstPage);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageSimpleMiddle(BenchmarkState state) {
+        return state.memberRepository.searchPageSimple(condition, middlePage);
+    }
+
+    @Benchmark
+    public Page<MemberTeamDto> searchPageComplexMiddle(BenchmarkState state) {
+        return state.memberRepository.searchPageComplex(condition, middlePage);
+    }
+}
@@ -0,0 +1,87 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.Projections;
+import org.openjdk.jmh.annotations.Benchmark;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.QMemberDto;
+import study.querydsl.respository.support.FastProjections;
+
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  DTO 프로젝션 방식 비교 (QuerydslBasicTest.findDtoBySetter / ByField / ByConstructor / ByQueryProjection)
+ *  전체 회원을 조회하기 때문에 memberCount가 클수록 DTO 생성 비용의 차이가 드러난다.
+ *  fast* : 리플렉션 대신 캐시된 MethodHandle / 람다를 사용하는 FastProjections
+ * */
+public class ProjectionBenchmark {
+
+    @Benchmark
+    public List<MemberDto> setter(BenchmarkState state) {
+        return state.queryFactory
+                .select(Projections.bean(MemberDto.class,
+                        member.username,
+                        member.age))
+                .from(member)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> field(BenchmarkState state) {
+        return state.queryFactory
+                .select(Projections.fields(MemberDto.class,
+                        member.username,
+                        member.age))
+                .from(member)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> constructor(BenchmarkState state) {
+        return state.queryFactory
+                .select(Projections.constructor(MemberDto.class,
+                        member.username,
+                        member.age))
+                .from(member)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> queryProjection(BenchmarkState state) {
+        return state.queryFactory
+                .select(new QMemberDto(member.username, member.age))
+                .from(member)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> fastSetter(BenchmarkState state) {
+        return state.queryFactory
+                .select(FastProjections.bean(MemberDto.class,
+                        member.username,
+                        member.age))
+                .from(member)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> fastField(BenchmarkState state) {
+        return state.queryFactory
+                .select(FastProjections.fields(MemberDto.class,
+                        member.username,
+                        member.age))
+                .from(member)
+                .fetch();
+    }
+
+    @Benchmark
+    public List<MemberDto> fastConstructor(BenchmarkState state) {
+        return state.queryFactory
+                .select(FastProjections.constructor(MemberDto.class,
+                        member.username,
+                        member.age))
+                .from(member)
+                .fetch();
+    }
+}
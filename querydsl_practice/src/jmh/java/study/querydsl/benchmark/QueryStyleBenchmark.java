@@ -0,0 +1,61 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  같은 조회를 다른 방식으로 작성했을 때의 비용 비교
+ *  - JPQL 문자열 vs Querydsl (QuerydslBasicTest.startJPQL / startQuerydsl)
+ *  - BooleanBuilder vs where 다중 파라미터 (MemberJpaRepository.searchByBuilder / search)
+ * */
+@State(Scope.Thread)
+public class QueryStyleBenchmark {
+
+    private String username;
+    private MemberSearchCondition condition;
+
+    @Setup
+    public void setUp(BenchmarkState state) {
+        username = state.username(state.memberCount / 2);
+
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(40);
+    }
+
+    @Benchmark
+    public Member startJPQL(BenchmarkState state) {
+        return state.em.createQuery("select m from Member m where m.username = :username", Member.class)
+                .setParameter("username", username)
+                .getSingleResult();
+    }
+
+    @Benchmark
+    public Member startQuerydsl(BenchmarkState state) {
+        return state.queryFactory
+                .select(member)
+                .from(member)
+                .where(member.username.eq(username))
+                .fetchOne();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByBuilder(BenchmarkState state) {
+        return state.memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByWhereParam(BenchmarkState state) {
+        return state.memberJpaRepository.search(condition);
+    }
+}
@@ -1,9 +1,15 @@
 package study.querydsl;
 
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.cfg.AvailableSettings;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
+import study.querydsl.respository.support.DataChangeStatementInspector;
+import study.querydsl.respository.support.DataChangeTracker;
+import study.querydsl.respository.support.MeteredJPAQueryFactory;
+import study.querydsl.respository.support.QueryMetrics;
 
 import javax.persistence.EntityManager;
 
@@ -14,9 +20,16 @@ public class QuerydslApplication {
 		SpringApplication.run(QuerydslApplication.class, args);
 	}
 
+	// 실행되는 쿼리마다 실행 시간, row 수, 예외를 기록한다. -> /actuator/prometheus
 	@Bean
-	JPAQueryFactory jpaQueryFactory(EntityManager em) {
-		return new JPAQueryFactory(em);
+	JPAQueryFactory jpaQueryFactory(EntityManager em, QueryMetrics queryMetrics) {
+		return new MeteredJPAQueryFactory(em, queryMetrics);
+	}
+
+	@Bean
+	HibernatePropertiesCustomizer dataChangeStatementInspector(DataChangeTracker dataChangeTracker) {
+		return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR,
+				new DataChangeStatementInspector(dataChangeTracker));
 	}
 
 }
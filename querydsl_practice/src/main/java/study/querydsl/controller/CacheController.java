@@ -0,0 +1,39 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.CacheRegionStatisticsDto;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /*
+     *  2차 캐시 / 쿼리 캐시 영역별 hit, miss, put 횟수
+     *  hibernate.generate_statistics=true 일 때만 집계된다.
+     * */
+    @GetMapping("/v1/cache/statistics")
+    public List<CacheRegionStatisticsDto> cacheStatisticsV1() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        List<CacheRegionStatisticsDto> result = new ArrayList<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if (region != null) {
+                result.add(new CacheRegionStatisticsDto(regionName,
+                        region.getHitCount(), region.getMissCount(), region.getPutCount()));
+            }
+        }
+        return result;
+    }
+}
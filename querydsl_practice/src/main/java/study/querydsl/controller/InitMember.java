@@ -1,15 +1,17 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.respository.support.BulkLoader;
 
 import javax.annotation.PostConstruct;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
-import javax.transaction.Transactional;
+import java.util.Arrays;
+import java.util.List;
 
 @Profile("local")
 @Component
@@ -25,20 +27,23 @@ public class InitMember {
 
     @Component
     static class InitMemberService {
-        @PersistenceContext
-        private EntityManager em;
+        @Autowired
+        private BulkLoader bulkLoader;
 
-        @Transactional // @PostConstruct 하는 부분과 @Transactional 하는 부분은 분리해줘야한다.
+        // 부하 테스트용으로 늘려서 사용할 수 있다. ex) --querydsl.init-member.count=1000000
+        @Value("${querydsl.init-member.count:100}")
+        private long memberCount;
+
+        // 트랜잭션은 BulkLoader가 커밋 단위로 직접 시작한다.
         public void init() {
-            Team teamA = new Team("teamA");
-            Team teamB = new Team("teamB");
-            em.persist(teamA);
-            em.persist(teamB);
-
-            for (int i=0; i<100; i++) {
-                Team selectedTeam = i % 2 == 0 ? teamA : teamB;
-                em.persist(new Member("member"+i, i, selectedTeam));
-            }
+            List<Team> teams = bulkLoader.persistAll(Arrays.asList(new Team("teamA"), new Team("teamB")));
+
+            bulkLoader.load(BulkLoader.generate(memberCount, i -> {
+                // 양방향 편의 메서드 대신 참조만 건다. -> teams의 members 컬렉션에 회원이 쌓이지 않는다.
+                Member member = new Member("member" + i, (int) (i % 100));
+                member.setTeam(teams.get((int) (i % 2)));
+                return member;
+            }));
         }
     }
 }
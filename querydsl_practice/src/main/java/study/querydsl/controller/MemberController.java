@@ -1,36 +1,241 @@
 package study.querydsl.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.respository.MemberJpaRepository;
 import study.querydsl.respository.MemberRepository;
+import study.querydsl.respository.support.DataVersion;
+import study.querydsl.respository.support.KeysetPage;
+import study.querydsl.respository.support.ReadYourWrites;
+import study.querydsl.respository.support.StatementCounter;
+import study.querydsl.respository.support.StatementCounts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
 
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final String[] MEMBER_TABLES = {"member", "team"};
+
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final ObjectMapper objectMapper;
+    private final DataVersion dataVersion;
+    private final PageJsonWriter pageJsonWriter;
+    private final StatementCounter statementCounter;
+    private final ReadYourWrites readYourWrites;
+
+    // Pageable 과 같은 최대 페이지 크기 (웹 애플리케이션이 아니면 SpringDataWebProperties 빈이 없다.)
+    @Value("${spring.data.web.pageable.max-page-size:2000}")
+    private int maxPageSize;
+
+    // ETag를 붙이는 검색을 primary에서 읽는다. (false 이면 replica 지연 동안 ETag보다 오래된 본문이 나갈 수 있다.)
+    @Value("${querydsl.etag.read-primary:true}")
+    private boolean etagReadPrimary;
 
+    /*
+     *  v1 ~ v3 는 CompletableFuture를 반환한다. -> 비동기 요청으로 처리되어 DB 응답을 기다리는 동안 요청 스레드가 반납된다.
+     *  조회는 AsyncQueryExecutor의 스레드에서 실행된다.
+     *
+     *  응답에는 member / team 데이터 버전과 검색 조건(+ 페이지)으로 만든 ETag가 붙는다.
+     *  If-None-Match 가 같으면 쿼리를 실행하지 않고 304로 응답한다. (checkNotModified가 true -> null 반환)
+     *  본문은 ETag의 버전 이후에 읽은 것이어야 한다.
+     *  -> SingleFlight 키에 버전을 넣고(변경 전에 시작된 실행을 받지 않는다.),
+     *     querydsl.etag.read-primary=true(기본)이면 replica 지연을 피해서 primary에서 읽는다. (readTagged)
+     * */
     @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+    public CompletableFuture<List<MemberTeamDto>> searchMemberV1(MemberSearchCondition condition, WebRequest request) {
+        if (notModified(request, "v1", condition)) {
+            return null;
+        }
+        return readTagged(() -> memberJpaRepository.searchAsync(condition));
+    }
+
+    /*
+     *  검색 결과 전체를 한 줄에 하나씩 JSON(NDJSON)으로 내려준다.
+     *  List로 모으지 않고 조회되는 대로 바로 응답에 쓰기 때문에 결과 건수와 상관없이 메모리 사용량이 일정하다.
+     * */
+    @GetMapping("/v1/members/export")
+    public ResponseEntity<StreamingResponseBody> exportMemberV1(MemberSearchCondition condition) {
+        ObjectWriter writer = objectMapper.writerFor(MemberTeamDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            // 값 사이에 기본으로 들어가는 공백 대신 줄바꿈만 직접 넣어준다.
+            generator.setRootValueSeparator(null);
+
+            memberJpaRepository.searchStream(condition, memberTeamDto -> {
+                try {
+                    writer.writeValue(generator, memberTeamDto);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(withStatementScope(body));
     }
 
 
     @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageSimple(condition, pageable);
+    public CompletableFuture<Page<MemberTeamDto>> searchMemberV2(MemberSearchCondition condition, Pageable pageable,
+                                                                 WebRequest request) {
+        if (notModified(request, "v2", condition, pageable)) {
+            return null;
+        }
+        return readTagged(() -> memberRepository.searchPageSimpleAsync(condition, pageable));
     }
 
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageComplex(condition, pageable);
+    public CompletableFuture<Page<MemberTeamDto>> searchMemberV3(MemberSearchCondition condition, Pageable pageable,
+                                                                 WebRequest request) {
+        if (notModified(request, "v3", condition, pageable)) {
+            return null;
+        }
+        return readTagged(() -> memberRepository.searchPageComplexAsync(condition, pageable));
+    }
+
+    /*
+     *  v2 / v3 와 같은 JSON을 content를 모으지 않고 조회되는 대로 바로 응답에 쓴다. (PageJsonWriter)
+     *  -> 페이지 크기가 커도 요청마다 사용하는 메모리가 일정하다.
+     *  스트림은 다른 요청과 나눠 쓸 수 없기 때문에 SingleFlight는 거치지 않는다. (ETag와 읽는 곳은 v2 / v3와 같다.)
+     * */
+    @GetMapping("/v2/members/stream")
+    public ResponseEntity<StreamingResponseBody> streamMemberV2(MemberSearchCondition condition, Pageable pageable,
+                                                                WebRequest request) {
+        if (notModified(request, "v2", condition, pageable)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(withStatementScope(readTaggedBody(pageJsonWriter.write(MemberTeamDto.class,
+                        rows -> memberRepository.streamPageSimple(condition, pageable, rows)))));
+    }
+
+    @GetMapping("/v3/members/stream")
+    public ResponseEntity<StreamingResponseBody> streamMemberV3(MemberSearchCondition condition, Pageable pageable,
+                                                                WebRequest request) {
+        if (notModified(request, "v3", condition, pageable)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(withStatementScope(readTaggedBody(pageJsonWriter.write(MemberTeamDto.class,
+                        rows -> memberRepository.streamPageComplex(condition, pageable, rows)))));
+    }
+
+    /*
+     *  전체 개수 없이 hasNext(= last)만 내려준다. -> count 쿼리를 실행하지 않는다. (무한 스크롤)
+     *  sort 는 MemberTeamDto 프로퍼티 이름 ex) /v4/members?sort=age,desc -> 지원하지 않는 프로퍼티는 400
+     * */
+    @GetMapping("/v4/members")
+    public Slice<MemberTeamDto> searchMemberV4(MemberSearchCondition condition, Pageable pageable) {
+        return badRequestOnInvalidArgument(() -> memberRepository.searchSlice(condition, pageable));
+    }
+
+    /*
+     *  다음 페이지는 응답의 nextCursor를 cursor 파라미터로 넘겨서 조회한다. ex) /v1/members/keyset?size=20&sort=age,desc
+     *  size 는 Pageable과 같이 spring.data.web.pageable.max-page-size(기본 2000)를 넘지 않도록 줄인다.
+     *  잘못된 cursor, 지원하지 않는 정렬 프로퍼티는 400
+     * */
+    @GetMapping("/v1/members/keyset")
+    public KeysetPage<MemberTeamDto> searchMemberKeyset(MemberSearchCondition condition,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = "20") int size,
+                                                        Sort sort) {
+        int pageSize = Math.min(size, maxPageSize);
+        return badRequestOnInvalidArgument(() -> memberRepository.searchKeyset(condition, cursor, pageSize, sort));
+    }
+
+    // StreamingResponseBody는 요청 스레드가 아닌 곳에서 쓰여진다. -> 요청의 SQL 수 범위(StatementBudgetFilter)를 넘겨준다.
+    private StreamingResponseBody withStatementScope(StreamingResponseBody body) {
+        StatementCounts counts = statementCounter.currentCounts();
+        return out -> {
+            StatementCounter.Scope scope = statementCounter.attach(counts);
+            try {
+                body.writeTo(out);
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    private <T> CompletableFuture<T> readTagged(Supplier<CompletableFuture<T>> search) {
+        return etagReadPrimary ? readYourWrites.readPrimary(search) : search.get();
+    }
+
+    // 본문은 응답을 쓰는 스레드에서 읽는다. -> 그 스레드에서 readPrimary 범위를 연다.
+    private StreamingResponseBody readTaggedBody(StreamingResponseBody body) {
+        if (!etagReadPrimary) {
+            return body;
+        }
+        return out -> {
+            try {
+                readYourWrites.readPrimary(() -> {
+                    try {
+                        body.writeTo(out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return null;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    // 리포지토리의 IllegalArgumentException은 예외 변환 때문에 InvalidDataAccessApiUsageException 으로 올라온다.
+    private <T> T badRequestOnInvalidArgument(Supplier<T> query) {
+        try {
+            return query.get();
+        } catch (IllegalArgumentException | InvalidDataAccessApiUsageException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private boolean notModified(WebRequest request, Object... key) {
+        return request.checkNotModified(dataVersion.etag(MEMBER_TABLES, key));
+    }
+
+    // 비동기 조회의 대기열(querydsl.async.queue-capacity)이 가득 찬 경우, 함께 받는 조회가 querydsl.single-flight.timeout 안에 끝나지 않은 경우
+    @ExceptionHandler({RejectedExecutionException.class, TimeoutException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void asyncQueryRejected() {
     }
 }
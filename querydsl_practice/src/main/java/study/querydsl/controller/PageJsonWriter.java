@@ -0,0 +1,82 @@
+package study.querydsl.controller;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+ *  Page를 Jackson으로 직렬화한 것과 같은 JSON을 content를 List로 모으지 않고 만든다.
+ *
+ *  1. {"content":[ 를 쓰고, 조회되는 row를 바로 JsonGenerator에 쓴다.
+ *  2. 조회가 끝나면(= total이 정해지면) content를 뺀 나머지 프로퍼티(pageable, totalElements, ...)를 쓴다.
+ *     -> Jackson이 Page를 직렬화할 때도 content가 첫 번째 프로퍼티라서 순서까지 같다.
+ *
+ *  row 타입의 ObjectWriter(serializer)는 타입마다 한 번만 만든다.
+ *  요청마다 메모리에 남는 것은 row 한 건과 content를 뺀 Page 프로퍼티뿐이다. -> 페이지 크기와 상관없이 일정하다.
+ * */
+@Component
+public class PageJsonWriter {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper envelopeMapper;
+    private final Map<Class<?>, ObjectWriter> rowWriters = new ConcurrentHashMap<>();
+
+    public PageJsonWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.envelopeMapper = objectMapper.copy().addMixIn(Slice.class, WithoutContent.class);
+    }
+
+    /*
+     *  query : row를 하나씩 넘겨받을 Consumer를 받아서 조회하고, content 건수가 맞는 Page를 반환한다.
+     *          ex) rows -> memberRepository.streamPageComplex(condition, pageable, rows)
+     * */
+    public <T> StreamingResponseBody write(Class<T> rowType, Function<Consumer<T>, Page<?>> query) {
+        ObjectWriter rowWriter = rowWriters.computeIfAbsent(rowType, type -> objectMapper.writerFor(type)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.writeStartObject();
+            generator.writeFieldName("content");
+            generator.writeStartArray();
+
+            Page<?> page = query.apply(row -> {
+                try {
+                    rowWriter.writeValue(generator, row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+
+            JsonNode envelope = envelopeMapper.valueToTree(page);
+            Iterator<Map.Entry<String, JsonNode>> fields = envelope.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                generator.writeFieldName(field.getKey());
+                generator.writeTree(field.getValue());
+            }
+            generator.writeEndObject();
+            generator.flush();
+        };
+    }
+
+    @JsonIgnoreProperties("content")
+    private interface WithoutContent {
+    }
+}
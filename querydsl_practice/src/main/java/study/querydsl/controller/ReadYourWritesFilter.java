@@ -0,0 +1,47 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import study.querydsl.respository.support.ReadYourWrites;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+
+/*
+ *  X-Session-Id 헤더(없으면 HTTP 세션 id)를 세션으로 사용한다.
+ *  -> 같은 세션에서 쓰기 직후에 보낸 조회 요청은 replica 대신 primary에서 읽는다.
+ * */
+@Component
+@RequiredArgsConstructor
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String SESSION_HEADER = "X-Session-Id";
+
+    private final ReadYourWrites readYourWrites;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String sessionId = request.getHeader(SESSION_HEADER);
+        if (!StringUtils.hasText(sessionId)) {
+            HttpSession session = request.getSession(false);
+            sessionId = session != null ? session.getId() : null;
+        }
+
+        readYourWrites.clear();
+        if (sessionId != null) {
+            readYourWrites.bind(sessionId);
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            readYourWrites.clear();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import study.querydsl.respository.support.SlowQuery;
+import study.querydsl.respository.support.SlowQueryLog;
+
+import java.util.List;
+
+/*
+ *  GET    /actuator/slowqueries -> 최근 느린 쿼리와 실행 계획 (fullScan 으로 인덱스를 타지 않는 검색 조건을 찾는다)
+ *  DELETE /actuator/slowqueries -> 비우기
+ * */
+@Component
+@Endpoint(id = "slowqueries")
+@RequiredArgsConstructor
+public class SlowQueryEndpoint {
+
+    private final SlowQueryLog slowQueryLog;
+
+    @ReadOperation
+    public List<SlowQuery> slowQueries() {
+        return slowQueryLog.getSlowQueries();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        slowQueryLog.clear();
+    }
+}
@@ -0,0 +1,107 @@
+package study.querydsl.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import study.querydsl.respository.support.StatementCounter;
+import study.querydsl.respository.support.StatementCounts;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+/*
+ *  요청마다 실행된 SQL 수, 엔티티 로딩 수, 컬렉션 초기화 수를 센다. (StatementCounter)
+ *
+ *  mode
+ *  - off    : 세지 않는다.
+ *  - log    : max-statements 를 넘거나 같은 SQL이 n-plus-one-threshold 번 이상 반복된 요청을 경고 로그로 남긴다.
+ *  - reject : log 와 같고, max-statements 를 넘는 SQL은 실행하지 않고 StatementBudgetExceededException (500)
+ *
+ *  비동기 요청(CompletableFuture)은 조회가 끝난 뒤(응답 완료 시점)에 로그를 남긴다.
+ * */
+@Slf4j
+@Component
+public class StatementBudgetFilter extends OncePerRequestFilter {
+
+    public enum Mode {
+        OFF, LOG, REJECT
+    }
+
+    private final StatementCounter statementCounter;
+    private final Mode mode;
+    private final long maxStatements;
+    private final int nPlusOneThreshold;
+
+    public StatementBudgetFilter(StatementCounter statementCounter,
+                                 @Value("${querydsl.statement-budget.mode:log}") Mode mode,
+                                 @Value("${querydsl.statement-budget.max-statements:20}") long maxStatements,
+                                 @Value("${querydsl.statement-budget.n-plus-one-threshold:10}") int nPlusOneThreshold) {
+        this.statementCounter = statementCounter;
+        this.mode = mode;
+        this.maxStatements = maxStatements;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (mode == Mode.OFF) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        StatementCounts counts;
+        try (StatementCounter.Scope scope = statementCounter.start(maxStatements, mode == Mode.REJECT)) {
+            counts = scope.getCounts();
+            filterChain.doFilter(request, response);
+        }
+
+        if (request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    report(request, counts);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            report(request, counts);
+        }
+    }
+
+    // 비동기 요청이 다시 dispatch 될 때는 세지 않는다. (처음 요청에서 시작한 범위로 이미 세고 있다.)
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return true;
+    }
+
+    private void report(HttpServletRequest request, StatementCounts counts) {
+        if (counts.isOverBudget()) {
+            log.warn("{} {} exceeded statement budget ({}): {}",
+                    request.getMethod(), request.getRequestURI(), maxStatements, counts);
+            return;
+        }
+        Map<String, Integer> repeated = counts.getRepeatedStatements(nPlusOneThreshold);
+        if (!repeated.isEmpty()) {
+            log.warn("{} {} possible N+1 ({}): {}", request.getMethod(), request.getRequestURI(), counts, repeated);
+        }
+    }
+}
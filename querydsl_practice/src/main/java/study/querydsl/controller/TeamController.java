@@ -0,0 +1,23 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.respository.TeamRepository;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamRepository teamRepository;
+
+    // ex) /v1/teams?teamName=team&page=0&size=10&sort=name
+    @GetMapping("/v1/teams")
+    public Page<TeamMembersDto> searchTeamV1(@RequestParam(required = false) String teamName, Pageable pageable) {
+        return teamRepository.searchTeamsWithMembers(teamName, pageable);
+    }
+}
@@ -0,0 +1,19 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class CacheRegionStatisticsDto {
+
+    private String regionName;
+    private long hitCount;
+    private long missCount;
+    private long putCount;
+
+    public CacheRegionStatisticsDto(String regionName, long hitCount, long missCount, long putCount) {
+        this.regionName = regionName;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+    }
+}
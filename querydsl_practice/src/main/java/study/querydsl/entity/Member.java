@@ -1,18 +1,32 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 
+/*
+ *  검색 조건(usernameEq, ageGoe, ageLoe)과 키셋 정렬(age, member_id)에 맞춘 인덱스
+ *  team_id는 외래 키라서 DB가 인덱스를 만든다.
+ * */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_age", columnList = "age, member_id")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "member")
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age"})
 public class Member {
 
 
+    // allocationSize 만큼 시퀀스를 한 번에 가져와서 insert 마다 시퀀스를 조회하지 않는다. -> JDBC 배치 insert 가능
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
     @Column(name = "member_id")
     private Long id;
 
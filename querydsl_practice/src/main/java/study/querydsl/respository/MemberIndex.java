@@ -0,0 +1,549 @@
+package study.querydsl.respository;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.buffer.BufferFastAggregation;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/*
+ *  MemberSearchCondition 의 조건(usernameEq, teamNameEq, ageGoe, ageLoe)에 맞춘 메모리 인덱스 (MemberSnapshot이 사용)
+ *
+ *  회원은 member_id 순서의 위치(0 ~ size-1)로 표현하고, 조건마다 위치의 압축 비트맵(Roaring)을 가진다.
+ *  - age      : 정렬된 int 컬럼(서로 다른 나이) + 나이마다 비트맵 -> 범위 조건은 이분 탐색 후 비트맵 OR
+ *  - username : 이름의 64비트 해시 -> 비트맵 (정렬된 long 컬럼 + 이분 탐색)
+ *  - teamName : 팀 이름의 64비트 해시 -> 비트맵
+ *  조건끼리는 비트맵 AND -> 박싱 없이 id 목록과 건수를 구한다.
+ *
+ *  회원의 행(member_id, username, age, team_id, team_name)도 위치 순서의 컬럼으로 가지고 있다가 row()로 꺼낸다.
+ *  (이름은 UTF-8 바이트를 이어 붙이고 위치마다 시작 offset을 둔다.)
+ *
+ *  해시 버킷의 값은 그 버킷 첫 회원의 이름과 비교한다.
+ *  -> 인덱스에 없는 값이 다른 값과 해시만 같은 경우에도 그 버킷의 회원을 돌려주지 않는다.
+ *  해시가 충돌한 버킷(서로 다른 값이 섞인 버킷)은 값을 비교할 수 없다.
+ *  -> select 결과는 후보(상위 집합)이고, 충돌한 버킷을 사용한 조건은 count를 주지 않는다. (호출한 쪽에서 다시 확인)
+ *
+ *  off-heap=true 이면 모든 컬럼과 비트맵을 direct ByteBuffer에 두고 조회할 때 뷰만 만든다.
+ *  -> 회원 수가 늘어도 힙에는 버퍼 객체만 남는다. (만드는 동안에만 Builder가 힙을 사용한다.)
+ *  direct 버퍼는 GC를 기다리지 않고 retire() 이후 마지막 reader가 release() 할 때 바로 해제한다.
+ *  -> 인덱스(select 결과 비트맵 포함)는 acquire() ~ release() 사이에서만 사용한다.
+ *  만들어진 뒤에는 바뀌지 않는다. (바뀐 회원은 MemberSnapshot이 따로 확인하고, 인덱스는 백그라운드에서 다시 만든다.)
+ * */
+public final class MemberIndex {
+
+    // 팀이 없는 회원의 team_id
+    private static final long NO_TEAM = Long.MIN_VALUE;
+
+    private final int size;
+    private final Buffers buffers;
+    private final LongBuffer memberIds;
+    private final IntBuffer rowAges;
+    private final LongBuffer teamIds;
+    private final Strings usernames;
+    private final Strings teamNames;
+    private final IntBuffer ages;
+    private final Bitmaps ageBitmaps;
+    private final LongBuffer usernameHashes;
+    private final Bitmaps usernameBitmaps;
+    private final ImmutableRoaringBitmap usernameCollisions;
+    private final LongBuffer teamNameHashes;
+    private final Bitmaps teamNameBitmaps;
+    private final ImmutableRoaringBitmap teamNameCollisions;
+    private final ToLongFunction<String> hash;
+
+    // 사용 중인 reader 수 + 1(retire 전) -> 0이 되면 버퍼를 해제하고 더 이상 acquire 할 수 없다.
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean retired = new AtomicBoolean();
+
+    private MemberIndex(Builder builder, boolean offHeap) {
+        this.size = builder.memberIds.length;
+        this.buffers = new Buffers(offHeap);
+        this.memberIds = buffers.longs(builder.memberIds);
+        this.rowAges = buffers.ints(builder.rowAges);
+        this.teamIds = buffers.longs(builder.teamIds);
+        this.usernames = new Strings(builder.usernames, buffers);
+        this.teamNames = new Strings(builder.teamNames, buffers);
+        this.ages = buffers.ints(builder.ages);
+        this.ageBitmaps = new Bitmaps(builder.ageBitmaps, buffers);
+        this.usernameHashes = buffers.longs(builder.usernameHashes);
+        this.usernameBitmaps = new Bitmaps(builder.usernameBitmaps, buffers);
+        this.usernameCollisions = Bitmaps.copy(builder.usernameCollisions, buffers);
+        this.teamNameHashes = buffers.longs(builder.teamNameHashes);
+        this.teamNameBitmaps = new Bitmaps(builder.teamNameBitmaps, buffers);
+        this.teamNameCollisions = Bitmaps.copy(builder.teamNameCollisions, buffers);
+        this.hash = builder.hash;
+    }
+
+    public static MemberIndex build(Collection<MemberTeamDto> rows, boolean offHeap) {
+        return build(rows, offHeap, MemberIndex::hash);
+    }
+
+    // 테스트에서 해시 충돌을 만들기 위해 해시 함수를 바꿀 수 있다.
+    static MemberIndex build(Collection<MemberTeamDto> rows, boolean offHeap, ToLongFunction<String> hash) {
+        return new MemberIndex(new Builder(rows, hash), offHeap);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 인덱스를 읽기 전에 호출한다. 이미 해제된 인덱스면 false
+    public boolean acquire() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            buffers.free();
+        }
+    }
+
+    // 더 이상 새로 사용하지 않는 인덱스 -> 읽고 있는 reader가 모두 release 하면 해제된다.
+    public void retire() {
+        if (retired.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    // 조건에 맞는 회원의 위치 (해시 충돌이 있으면 조건에 맞지 않는 회원이 섞일 수 있다.)
+    public ImmutableRoaringBitmap select(MemberSearchCondition condition) {
+        List<ImmutableRoaringBitmap> filters = filters(condition);
+        if (filters == null) {
+            return new MutableRoaringBitmap();
+        }
+        if (filters.isEmpty()) {
+            MutableRoaringBitmap all = new MutableRoaringBitmap();
+            all.add(0L, size);
+            return all;
+        }
+        return filters.size() == 1
+                ? filters.get(0)
+                : BufferFastAggregation.and(filters.toArray(new ImmutableRoaringBitmap[0]));
+    }
+
+    // 정확한 건수 -> 해시가 충돌한 버킷을 사용하는 조건이면 empty
+    public OptionalLong count(MemberSearchCondition condition) {
+        if (!isExact(condition)) {
+            return OptionalLong.empty();
+        }
+        List<ImmutableRoaringBitmap> filters = filters(condition);
+        if (filters == null) {
+            return OptionalLong.of(0);
+        }
+        switch (filters.size()) {
+            case 0:
+                return OptionalLong.of(size);
+            case 1:
+                return OptionalLong.of(filters.get(0).getLongCardinality());
+            case 2:
+                return OptionalLong.of(ImmutableRoaringBitmap.andCardinality(filters.get(0), filters.get(1)));
+            default:
+                return OptionalLong.of(BufferFastAggregation.and(filters.toArray(new ImmutableRoaringBitmap[0]))
+                        .getLongCardinality());
+        }
+    }
+
+    public boolean isExact(MemberSearchCondition condition) {
+        return !collides(usernameHashes, usernameCollisions, condition.getUsername())
+                && !collides(teamNameHashes, teamNameCollisions, condition.getTeamName());
+    }
+
+    // member_id의 위치 (인덱스에 없으면 -1)
+    public int position(long memberId) {
+        return indexOf(memberIds, memberId);
+    }
+
+    public long memberId(int position) {
+        return memberIds.get(position);
+    }
+
+    // 위치의 행 -> 매번 새로 만들기 때문에 호출한 쪽에서 바꿔도 된다.
+    public MemberTeamDto row(int position) {
+        long teamId = teamIds.get(position);
+        return new MemberTeamDto(memberIds.get(position), usernames.get(position), rowAges.get(position),
+                teamId == NO_TEAM ? null : teamId, teamNames.get(position));
+    }
+
+    // 팀에 속한 회원의 위치 (팀 변경은 드물기 때문에 컬럼을 그대로 훑는다.)
+    public int[] positionsOfTeam(long teamId) {
+        return IntStream.range(0, size)
+                .filter(position -> teamIds.get(position) == teamId)
+                .toArray();
+    }
+
+    // 위치 -> member_id (member_id 오름차순)
+    public long[] memberIds(ImmutableRoaringBitmap positions) {
+        long[] result = new long[positions.getCardinality()];
+        IntIterator iterator = positions.getIntIterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            result[i] = memberIds.get(iterator.next());
+        }
+        return result;
+    }
+
+    /*
+     *  조건별 비트맵 (조건이 없는 필드는 빠진다.)
+     *  null -> 어떤 회원도 만족하지 않는 조건 (없는 이름, 범위에 나이가 하나도 없음)
+     * */
+    private List<ImmutableRoaringBitmap> filters(MemberSearchCondition condition) {
+        List<ImmutableRoaringBitmap> filters = new ArrayList<>(3);
+
+        if (StringUtils.hasText(condition.getUsername())) {
+            int index = bucket(usernameHashes, usernameBitmaps, usernameCollisions, usernames, condition.getUsername());
+            if (index < 0) {
+                return null;
+            }
+            filters.add(usernameBitmaps.get(index));
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            int index = bucket(teamNameHashes, teamNameBitmaps, teamNameCollisions, teamNames, condition.getTeamName());
+            if (index < 0) {
+                return null;
+            }
+            filters.add(teamNameBitmaps.get(index));
+        }
+        if (condition.getAgeGoe() != null || condition.getAgeLoe() != null) {
+            int from = condition.getAgeGoe() != null ? lowerBound(ages, condition.getAgeGoe()) : 0;
+            int to = condition.getAgeLoe() != null ? upperBound(ages, condition.getAgeLoe()) : ages.limit();
+            if (from >= to) {
+                return null;
+            }
+            // 전체 나이 범위면 조건이 없는 것과 같다.
+            if (from > 0 || to < ages.limit()) {
+                ImmutableRoaringBitmap[] buckets = new ImmutableRoaringBitmap[to - from];
+                for (int i = from; i < to; i++) {
+                    buckets[i - from] = ageBitmaps.get(i);
+                }
+                filters.add(buckets.length == 1 ? buckets[0] : BufferFastAggregation.or(buckets));
+            }
+        }
+        return filters;
+    }
+
+    /*
+     *  값이 들어있는 해시 버킷의 순번 (없으면 -1)
+     *  해시만 같고 값이 다르면 -1 -> 충돌한 버킷은 값을 비교할 수 없어서 그대로 돌려준다.
+     *  충돌하지 않은 버킷의 값은 모두 같다. -> 첫 회원의 값과 비교한다.
+     * */
+    private int bucket(LongBuffer hashes, Bitmaps bitmaps, ImmutableRoaringBitmap collisions, Strings values, String value) {
+        int index = indexOf(hashes, hash.applyAsLong(value));
+        if (index >= 0 && !collisions.contains(index) && !value.equals(values.get(bitmaps.get(index).first()))) {
+            return -1;
+        }
+        return index;
+    }
+
+    private boolean collides(LongBuffer hashes, ImmutableRoaringBitmap collisions, String value) {
+        if (!StringUtils.hasText(value)) {
+            return false;
+        }
+        int index = indexOf(hashes, hash.applyAsLong(value));
+        return index >= 0 && collisions.contains(index);
+    }
+
+    private static int indexOf(LongBuffer sorted, long key) {
+        int low = 0;
+        int high = sorted.limit() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = sorted.get(mid);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // key 이상인 첫 위치
+    private static int lowerBound(IntBuffer sorted, int key) {
+        int low = 0;
+        int high = sorted.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // key 보다 큰 첫 위치
+    private static int upperBound(IntBuffer sorted, int key) {
+        int low = 0;
+        int high = sorted.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid) <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // FNV-1a 64비트 + 마지막에 비트를 섞는다. (String.hashCode는 32비트라 충돌이 잦다.)
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /*
+     *  인덱스 하나가 할당한 버퍼 -> off-heap 이면 direct 버퍼를 모아두었다가 free()에서 한 번에 해제한다.
+     *  Unsafe.invokeCleaner 를 찾을 수 없는 환경이면 지금처럼 GC가 해제한다.
+     * */
+    private static final class Buffers {
+
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Java 9 이전이거나 접근이 막힌 환경
+                unsafe = null;
+                invokeCleaner = null;
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private final boolean offHeap;
+        private final List<ByteBuffer> direct = new ArrayList<>();
+
+        private Buffers(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        private ByteBuffer allocate(int bytes) {
+            if (!offHeap) {
+                return ByteBuffer.allocate(bytes).order(ByteOrder.nativeOrder());
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+            direct.add(buffer);
+            return buffer.order(ByteOrder.nativeOrder());
+        }
+
+        private LongBuffer longs(long[] values) {
+            return allocate(values.length * Long.BYTES).asLongBuffer().put(values).flip();
+        }
+
+        private IntBuffer ints(int[] values) {
+            return allocate(values.length * Integer.BYTES).asIntBuffer().put(values).flip();
+        }
+
+        private void free() {
+            if (INVOKE_CLEANER != null) {
+                for (ByteBuffer buffer : direct) {
+                    try {
+                        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                    } catch (ReflectiveOperationException e) {
+                        // 해제하지 못한 버퍼는 GC에 맡긴다.
+                    }
+                }
+            }
+            direct.clear();
+        }
+    }
+
+    /*
+     *  위치마다 문자열 하나 -> UTF-8 바이트를 이어 붙이고 offsets[i] ~ offsets[i+1] 이 i 번째 값 (null은 nulls 비트맵)
+     * */
+    private static final class Strings {
+
+        private final IntBuffer offsets;
+        private final ByteBuffer data;
+        private final ImmutableRoaringBitmap nulls;
+
+        private Strings(String[] values, Buffers buffers) {
+            byte[][] encoded = new byte[values.length][];
+            int[] offsets = new int[values.length + 1];
+            MutableRoaringBitmap nulls = new MutableRoaringBitmap();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == null) {
+                    nulls.add(i);
+                    encoded[i] = new byte[0];
+                } else {
+                    encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+                }
+                offsets[i + 1] = offsets[i] + encoded[i].length;
+            }
+            this.offsets = buffers.ints(offsets);
+            this.data = buffers.allocate(offsets[values.length]);
+            for (byte[] bytes : encoded) {
+                data.put(bytes);
+            }
+            data.flip();
+            this.nulls = Bitmaps.copy(nulls, buffers);
+        }
+
+        private String get(int position) {
+            if (nulls.contains(position)) {
+                return null;
+            }
+            ByteBuffer slice = data.duplicate();
+            slice.position(offsets.get(position)).limit(offsets.get(position + 1));
+            byte[] bytes = new byte[slice.remaining()];
+            slice.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /*
+     *  비트맵 여러 개를 직렬화해서 하나의 버퍼에 이어 붙인다.
+     *  offsets[i] ~ offsets[i+1] 이 i 번째 비트맵 -> 조회할 때마다 그 구간의 뷰(ImmutableRoaringBitmap)를 만든다.
+     * */
+    private static final class Bitmaps {
+
+        private final IntBuffer offsets;
+        private final ByteBuffer data;
+
+        private Bitmaps(List<MutableRoaringBitmap> bitmaps, Buffers buffers) {
+            int[] offsets = new int[bitmaps.size() + 1];
+            for (int i = 0; i < bitmaps.size(); i++) {
+                MutableRoaringBitmap bitmap = bitmaps.get(i);
+                bitmap.runOptimize();
+                offsets[i + 1] = offsets[i] + bitmap.serializedSizeInBytes();
+            }
+            this.offsets = buffers.ints(offsets);
+            this.data = buffers.allocate(offsets[bitmaps.size()]);
+            for (MutableRoaringBitmap bitmap : bitmaps) {
+                bitmap.serialize(data);
+            }
+            data.flip();
+        }
+
+        private ImmutableRoaringBitmap get(int index) {
+            ByteBuffer slice = data.duplicate();
+            slice.position(offsets.get(index)).limit(offsets.get(index + 1));
+            return new ImmutableRoaringBitmap(slice.slice());
+        }
+
+        private static ImmutableRoaringBitmap copy(MutableRoaringBitmap bitmap, Buffers buffers) {
+            return new Bitmaps(List.of(bitmap), buffers).get(0);
+        }
+    }
+
+    // 힙에서 정렬 / 그룹핑한 뒤 MemberIndex 생성자에서 버퍼로 옮긴다.
+    private static final class Builder {
+
+        private final long[] memberIds;
+        private final int[] rowAges;
+        private final long[] teamIds;
+        private final String[] usernames;
+        private final String[] teamNames;
+        private int[] ages;
+        private final List<MutableRoaringBitmap> ageBitmaps = new ArrayList<>();
+        private long[] usernameHashes;
+        private final List<MutableRoaringBitmap> usernameBitmaps = new ArrayList<>();
+        private final MutableRoaringBitmap usernameCollisions = new MutableRoaringBitmap();
+        private long[] teamNameHashes;
+        private final List<MutableRoaringBitmap> teamNameBitmaps = new ArrayList<>();
+        private final MutableRoaringBitmap teamNameCollisions = new MutableRoaringBitmap();
+        private final ToLongFunction<String> hash;
+
+        private Builder(Collection<MemberTeamDto> rows, ToLongFunction<String> hash) {
+            this.hash = hash;
+            MemberTeamDto[] sorted = rows.toArray(new MemberTeamDto[0]);
+            Arrays.sort(sorted, (a, b) -> Long.compare(a.getMemberId(), b.getMemberId()));
+
+            memberIds = new long[sorted.length];
+            rowAges = new int[sorted.length];
+            teamIds = new long[sorted.length];
+            usernames = new String[sorted.length];
+            teamNames = new String[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                memberIds[i] = sorted[i].getMemberId();
+                rowAges[i] = sorted[i].getAge();
+                teamIds[i] = sorted[i].getTeamId() != null ? sorted[i].getTeamId() : NO_TEAM;
+                usernames[i] = sorted[i].getUsername();
+                teamNames[i] = sorted[i].getTeamName();
+            }
+
+            ages = Arrays.stream(rowAges).sorted().distinct().toArray();
+            for (int i = 0; i < ages.length; i++) {
+                ageBitmaps.add(new MutableRoaringBitmap());
+            }
+            for (int position = 0; position < sorted.length; position++) {
+                ageBitmaps.get(Arrays.binarySearch(ages, rowAges[position])).add(position);
+            }
+
+            usernameHashes = hashIndex(usernames, usernameBitmaps, usernameCollisions);
+            teamNameHashes = hashIndex(teamNames, teamNameBitmaps, teamNameCollisions);
+        }
+
+        // 값의 해시 -> 위치 비트맵. 같은 해시에 서로 다른 값이 있으면 collisions에 해시의 순번을 기록한다.
+        private long[] hashIndex(String[] values, List<MutableRoaringBitmap> bitmaps, MutableRoaringBitmap collisions) {
+            Map<Long, MutableRoaringBitmap> byHash = new HashMap<>();
+            Map<Long, Set<String>> distinctValues = new HashMap<>();
+            for (int position = 0; position < values.length; position++) {
+                if (values[position] == null) {
+                    continue;
+                }
+                long valueHash = hash.applyAsLong(values[position]);
+                byHash.computeIfAbsent(valueHash, key -> new MutableRoaringBitmap()).add(position);
+                distinctValues.computeIfAbsent(valueHash, key -> new HashSet<>()).add(values[position]);
+            }
+
+            long[] hashes = byHash.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            for (int i = 0; i < hashes.length; i++) {
+                bitmaps.add(byHash.get(hashes[i]));
+                if (distinctValues.get(hashes[i]).size() > 1) {
+                    collisions.add(i);
+                }
+            }
+            return hashes;
+        }
+    }
+}
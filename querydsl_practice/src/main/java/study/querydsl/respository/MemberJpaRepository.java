@@ -2,29 +2,58 @@ package study.querydsl.respository;
 
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.respository.support.AsyncQueryExecutor;
+import study.querydsl.respository.support.DataVersion;
+import study.querydsl.respository.support.PreparedQuery;
+import study.querydsl.respository.support.SingleFlight;
 import static study.querydsl.entity.QTeam.*;
 
 import static study.querydsl.entity.QMember.*;
 
 import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+ *  조회는 readOnly 트랜잭션 -> replica가 설정되어 있으면 replica에서 읽는다. (ReplicaRoutingDataSource)
+ * */
 @Repository
+@Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class MemberJpaRepository {
 
+    private static final int STREAM_FETCH_SIZE = 1000;
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final AsyncQueryExecutor asyncQueryExecutor;
+    private final SingleFlight singleFlight;
+    private final DataVersion dataVersion;
 
+    // 검색 조건 조합마다 Param으로 만든 쿼리를 한 번만 직렬화해두고, 이후에는 값만 바인딩한다.
+    private final Map<Integer, PreparedQuery<MemberTeamDto>> searchQueries = new ConcurrentHashMap<>();
+    private final Map<Integer, PreparedQuery<MemberTeamDto>> searchByBuilderQueries = new ConcurrentHashMap<>();
+
+    @Transactional
     public void save(Member member) {
         em.persist(member);
     }
@@ -59,40 +88,78 @@ public class MemberJpaRepository {
     }
 
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
+        PreparedQuery<MemberTeamDto> query = searchByBuilderQueries.computeIfAbsent(MemberSearchParams.shape(condition), shape -> {
+            // BooleanBuilder는 null 조건을 무시하기 때문에 shape에 없는 조건은 자연스럽게 빠진다.
+            BooleanBuilder builder = new BooleanBuilder()
+                    .and(MemberSearchParams.usernameEq(shape))
+                    .and(MemberSearchParams.teamNameEq(shape))
+                    .and(MemberSearchParams.ageGoe(shape))
+                    .and(MemberSearchParams.ageLoe(shape));
+
+            JPAQuery<MemberTeamDto> searchQuery = queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id.as("memberId"),
+                            member.username,
+                            member.age,
+                            team.id.as("teamId"),
+                            team.name.as("teamName")
+                    ))
+                    .from(member);
+
+            return PreparedQuery.prepare(em, MemberSearchParams.joinTeam(searchQuery, shape)
+                    .where(builder));
+        });
+
+        return query.fetch(em, MemberSearchParams.bind(condition));
+    }
 
-        BooleanBuilder builder = new BooleanBuilder();
-        if (StringUtils.hasText(condition.getUsername())) {
-            builder.and(member.username.eq(condition.getUsername()));
-        }
-
-        if (StringUtils.hasText(condition.getTeamName())) {
-            builder.and(team.name.eq(condition.getTeamName()));
-        }
-
-        if (condition.getAgeGoe() != null) {
-            builder.and(member.age.goe(condition.getAgeGoe()));
-        }
-
-        if (condition.getAgeLoe() != null) {
-            builder.and(member.age.loe(condition.getAgeLoe()));
-        }
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        PreparedQuery<MemberTeamDto> query = searchQueries.computeIfAbsent(MemberSearchParams.shape(condition), shape -> {
+            JPAQuery<MemberTeamDto> searchQuery = queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id.as("memberId"),
+                            member.username,
+                            member.age,
+                            team.id.as("teamId"),
+                            team.name.as("teamName")
+                    ))
+                    .from(member);
+
+            return PreparedQuery.prepare(em, MemberSearchParams.joinTeam(searchQuery, shape)
+                    .where(
+                            MemberSearchParams.usernameEq(shape),
+                            MemberSearchParams.teamNameEq(shape),
+                            MemberSearchParams.ageGoe(shape),
+                            MemberSearchParams.ageLoe(shape)
+                    ));
+        });
+
+        return query.fetch(em, MemberSearchParams.bind(condition));
+    }
 
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(builder)
-                .fetch();
+    /*
+     *  search를 AsyncQueryExecutor에서 실행한다. (MemberController /v1/members)
+     *  같은 검색 값으로 동시에 들어온 호출은 한 번만 실행하고 결과를 함께 받는다. (SingleFlight)
+     *  키에 데이터 버전을 넣어서 변경이 커밋된 뒤의 호출은 그 전에 시작된 실행을 함께 받지 않는다. (MemberRepositoryImpl.searchAsync)
+     * */
+    public CompletableFuture<List<MemberTeamDto>> searchAsync(MemberSearchCondition condition) {
+        return singleFlight.execute("MemberJpaRepository.search",
+                Arrays.asList("MemberJpaRepository.search", MemberSearchParams.bind(condition),
+                        dataVersion.version(MemberSearchParams.TABLES)),
+                () -> asyncQueryExecutor.supply(() -> search(condition)));
     }
 
-    public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+    /*
+     *  검색 결과를 List로 모으지 않고 DB 커서(ScrollableResults)에서 한 건씩 꺼내서 consumer에 넘긴다.
+     *  DTO 프로젝션이라 조회 결과는 영속성 컨텍스트에 올라가지 않고, consumer가 지연 로딩 등으로 올린 엔티티는
+     *  STREAM_FETCH_SIZE 건마다 비운다. -> 결과가 아무리 많아도 메모리 사용량이 일정하다.
+     *  커서가 열려있는 동안 트랜잭션(커넥션)이 필요하다. -> StreamingResponseBody 처럼 트랜잭션이 없는 스레드에서 호출해도 된다.
+     * */
+    @Transactional(readOnly = true)
+    public long searchStream(MemberSearchCondition condition, Consumer<MemberTeamDto> consumer) {
+        long count = 0;
+
+        try (Stream<MemberTeamDto> stream = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -105,13 +172,29 @@ public class MemberJpaRepository {
                 .where(
                         usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
-                        ageBetween(condition)
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
                 )
-                .fetch();
+                .setHint(QueryHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE)
+                .stream()) {
+
+            Iterator<MemberTeamDto> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                if (++count % STREAM_FETCH_SIZE == 0) {
+                    clearIfNotDirty();
+                }
+            }
+        }
+
+        return count;
     }
 
-    private BooleanExpression ageBetween(MemberSearchCondition condition) {
-        return ageGoe(condition.getAgeGoe()).and(ageLoe(condition.getAgeLoe()));
+    // 호출한 쪽의 트랜잭션에 flush 되지 않은 변경이 있으면 버려지지 않도록 비우지 않는다.
+    private void clearIfNotDirty() {
+        if (!em.unwrap(Session.class).isDirty()) {
+            em.clear();
+        }
     }
 
     public List<Member> searchMember(MemberSearchCondition condition) {
@@ -2,13 +2,33 @@ package study.querydsl.respository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.respository.support.KeysetPage;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+
+    /*
+     *  searchPageSimple / searchPageComplex 와 같은 Page를 만들지만 content는 DB 커서에서 한 건씩 rows로 넘긴다.
+     *  반환되는 Page의 content는 건수만 맞춘 null 목록이다. (PageJsonWriter가 envelope를 쓸 때 사용)
+     * */
+    Page<MemberTeamDto> streamPageSimple(MemberSearchCondition condition, Pageable pageable, Consumer<MemberTeamDto> rows);
+    Page<MemberTeamDto> streamPageComplex(MemberSearchCondition condition, Pageable pageable, Consumer<MemberTeamDto> rows);
+
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+    KeysetPage<MemberTeamDto> searchKeyset(MemberSearchCondition condition, String cursor, int size, Sort sort);
+
+    // AsyncQueryExecutor에서 별도의 readOnly 트랜잭션으로 실행한다.
+    CompletableFuture<List<MemberTeamDto>> searchAsync(MemberSearchCondition condition);
+    CompletableFuture<Page<MemberTeamDto>> searchPageSimpleAsync(MemberSearchCondition condition, Pageable pageable);
+    CompletableFuture<Page<MemberTeamDto>> searchPageComplexAsync(MemberSearchCondition condition, Pageable pageable);
 }
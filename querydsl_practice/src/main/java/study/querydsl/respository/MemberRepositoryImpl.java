@@ -1,7 +1,9 @@
 package study.querydsl.respository;
 
-import com.querydsl.core.QueryResults;
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.OrderSpecifier;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
 import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
@@ -9,71 +11,125 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
-import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.respository.support.PageQueryExecutor;
+import study.querydsl.respository.support.CountQueryGenerator;
+import study.querydsl.respository.support.CountedPage;
+import study.querydsl.respository.support.DataVersion;
+import study.querydsl.respository.support.Keyset;
+import study.querydsl.respository.support.KeysetPage;
+import study.querydsl.respository.support.AsyncQueryExecutor;
+import study.querydsl.respository.support.PreparedQuery;
+import study.querydsl.respository.support.SingleFlight;
+import study.querydsl.respository.support.SliceQuery;
+import study.querydsl.respository.support.StreamQuery;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
 //@RequiredArgsConstructor
+@Transactional(readOnly = true)
 public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom {
 
     private final JPAQueryFactory queryFactory;
+    private final PageQueryExecutor pageQueryExecutor;
+    private final AsyncQueryExecutor asyncQueryExecutor;
+    private final MemberSnapshot memberSnapshot;
+    private final SingleFlight singleFlight;
+    private final DataVersion dataVersion;
+    private final Map<Integer, PreparedQuery<MemberTeamDto>> searchQueries = new ConcurrentHashMap<>();
 
 
-    public MemberRepositoryImpl(JPAQueryFactory jpaQueryFactory) {
+    public MemberRepositoryImpl(JPAQueryFactory jpaQueryFactory, PageQueryExecutor pageQueryExecutor,
+                                AsyncQueryExecutor asyncQueryExecutor, MemberSnapshot memberSnapshot,
+                                SingleFlight singleFlight, DataVersion dataVersion) {
         super(Member.class);
         this.queryFactory = jpaQueryFactory;
+        this.pageQueryExecutor = pageQueryExecutor;
+        this.asyncQueryExecutor = asyncQueryExecutor;
+        this.memberSnapshot = memberSnapshot;
+        this.singleFlight = singleFlight;
+        this.dataVersion = dataVersion;
     }
 
+    // 메모리 스냅샷(MemberSnapshot)을 사용할 수 있으면 DB를 거치지 않고 검색한다.
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageBetween(condition)
-                )
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName"))
-                ).fetch();
+        Optional<List<MemberTeamDto>> fromSnapshot = memberSnapshot.search(condition);
+        if (fromSnapshot.isPresent()) {
+            return fromSnapshot.get();
+        }
+
+        PreparedQuery<MemberTeamDto> query = searchQueries.computeIfAbsent(MemberSearchParams.shape(condition), shape -> {
+            JPAQuery<MemberTeamDto> searchQuery = queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id.as("memberId"),
+                            member.username,
+                            member.age,
+                            team.id.as("teamId"),
+                            team.name.as("teamName")
+                    ))
+                    .from(member);
+
+            return PreparedQuery.prepare(getEntityManager(), MemberSearchParams.joinTeam(searchQuery, shape)
+                    .where(
+                            MemberSearchParams.usernameEq(shape),
+                            MemberSearchParams.teamNameEq(shape),
+                            MemberSearchParams.ageGoe(shape),
+                            MemberSearchParams.ageLoe(shape)
+                    ));
+        });
+
+        return query.fetch(getEntityManager(), MemberSearchParams.bind(condition));
     }
 
+    /*
+     *  메모리 스냅샷을 사용할 수 있으면 content와 total을 모두 스냅샷에서 구한다.
+     *  -> 한 페이지의 content와 totalElements는 항상 같은 곳(스냅샷 또는 DB)에서 읽는다.
+     * */
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();
+        Optional<Page<MemberTeamDto>> fromSnapshot = memberSnapshot.page(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            return fromSnapshot.get();
+        }
 
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
+        // fetchResults()는 deprecated -> content 쿼리에서 만든 count 쿼리로 total을 구한다.
+        JPAQuery<MemberTeamDto> contentQuery = pageContentQuery(condition, pageable);
+        List<MemberTeamDto> content = contentQuery.fetch();
+        long total = CountQueryGenerator.count(CountQueryGenerator.generate(getEntityManager(), contentQuery));
+
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    @Override
+    public Page<MemberTeamDto> streamPageSimple(MemberSearchCondition condition, Pageable pageable,
+                                                Consumer<MemberTeamDto> rows) {
+        Optional<Page<MemberTeamDto>> fromSnapshot = memberSnapshot.page(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            fromSnapshot.get().forEach(rows);
+            return fromSnapshot.get();
+        }
+
+        JPAQuery<MemberTeamDto> contentQuery = pageContentQuery(condition, pageable);
+        List<MemberTeamDto> content = StreamQuery.forEach(contentQuery, rows);
+        long total = CountQueryGenerator.count(CountQueryGenerator.generate(getEntityManager(), contentQuery));
 
         return new PageImpl<>(content, pageable, total);
     }
@@ -108,7 +164,40 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 
     @Override
     public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+        // 메모리 스냅샷의 total은 항상 정확한 값이다.
+        Optional<Page<MemberTeamDto>> fromSnapshot = memberSnapshot.page(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            Page<MemberTeamDto> page = fromSnapshot.get();
+            return new CountedPage<>(page.getContent(), pageable, page.getTotalElements(), true);
+        }
+
+        JPAQuery<MemberTeamDto> contentQuery = pageContentQuery(condition, pageable);
+
+        // 팀 이름 조건이 없으면 count 쿼리에서는 team left join이 빠진다.
+        JPAQuery<Long> conutQuery = CountQueryGenerator.generate(getEntityManager(), contentQuery);
+
+
+        return pageQueryExecutor.getPage(pageable, contentQuery::fetch, conutQuery);
+//        return new PageImpl<>(content, pageable, total);
+    }
+
+    @Override
+    public Page<MemberTeamDto> streamPageComplex(MemberSearchCondition condition, Pageable pageable,
+                                                 Consumer<MemberTeamDto> rows) {
+        Optional<Page<MemberTeamDto>> fromSnapshot = memberSnapshot.page(condition, pageable);
+        if (fromSnapshot.isPresent()) {
+            Page<MemberTeamDto> page = fromSnapshot.get();
+            page.forEach(rows);
+            return new CountedPage<>(page.getContent(), pageable, page.getTotalElements(), true);
+        }
+
+        JPAQuery<MemberTeamDto> contentQuery = pageContentQuery(condition, pageable);
+        JPAQuery<Long> countQuery = CountQueryGenerator.generate(getEntityManager(), contentQuery);
+        return pageQueryExecutor.getPage(pageable, () -> StreamQuery.forEach(contentQuery, rows), countQuery);
+    }
+
+    private JPAQuery<MemberTeamDto> pageContentQuery(MemberSearchCondition condition, Pageable pageable) {
+        JPAQuery<MemberTeamDto> contentQuery = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -116,8 +205,9 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.id.as("teamId"),
                         team.name.as("teamName")
                 ))
-                .from(member)
-                .leftJoin(member.team, team)
+                .from(member);
+
+        return MemberSearchParams.joinTeam(contentQuery, MemberSearchParams.shape(condition))
                 .where(
                         usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
@@ -125,13 +215,87 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         ageLoe(condition.getAgeLoe())
                 )
                 .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetch();
+                .limit(pageable.getPageSize());
+    }
 
-        JPAQuery<Member> conutQuery = queryFactory
-                .select(member)
-                .from(member)
-                .leftJoin(member.team, team)
+    /*
+     *  count 쿼리 없이 다음 페이지 존재 여부(hasNext)만 알려준다.
+     *  Pageable의 sort를 적용하고, offset으로 이어서 조회하기 때문에 순서가 매번 같도록 마지막에 member.id로 정렬한다.
+     * */
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        JPAQuery<MemberTeamDto> contentQuery = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member);
+
+        contentQuery = MemberSearchParams.joinTeam(contentQuery, MemberSearchParams.shape(condition))
+                .where(
+                        usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                )
+                .orderBy(sliceOrder(pageable.getSort()));
+
+        return SliceQuery.fetch(contentQuery, pageable);
+    }
+
+    // MemberTeamDto 프로퍼티 이름으로 정렬한다. (id 는 memberId와 같다.)
+    private OrderSpecifier<?>[] sliceOrder(Sort sort) {
+        List<OrderSpecifier<?>> orders = new ArrayList<>();
+        boolean orderedById = false;
+
+        for (Sort.Order order : sort) {
+            ComparableExpressionBase<?> expression;
+            switch (order.getProperty()) {
+                case "id":
+                case "memberId":
+                    expression = member.id;
+                    orderedById = true;
+                    break;
+                case "username":
+                    expression = member.username;
+                    break;
+                case "age":
+                    expression = member.age;
+                    break;
+                case "teamId":
+                    expression = team.id;
+                    break;
+                case "teamName":
+                    expression = team.name;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported slice sort property: " + order.getProperty());
+            }
+            orders.add(order.isAscending() ? expression.asc() : expression.desc());
+        }
+
+        if (!orderedById) {
+            orders.add(member.id.asc());
+        }
+        return orders.toArray(new OrderSpecifier<?>[0]);
+    }
+
+    @Override
+    public KeysetPage<MemberTeamDto> searchKeyset(MemberSearchCondition condition, String cursor, int size, Sort sort) {
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member);
+
+        query = MemberSearchParams.joinTeam(query, MemberSearchParams.shape(condition))
                 .where(
                         usernameEq(condition.getUsername()),
                         teamNameEq(condition.getTeamName()),
@@ -139,9 +303,27 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         ageLoe(condition.getAgeLoe())
                 );
 
+        return memberKeyset(sort).fetch(query, cursor, size);
+    }
 
-        return PageableExecutionUtils.getPage(content, pageable, conutQuery::fetchCount);
-//        return new PageImpl<>(content, pageable, total);
+    // 정렬 조건 뒤에 항상 member.id를 붙여서 키가 유일하도록 만든다.
+    private Keyset<MemberTeamDto> memberKeyset(Sort sort) {
+        Keyset<MemberTeamDto> keyset = null;
+
+        for (Sort.Order order : sort) {
+            Order direction = order.isAscending() ? Order.ASC : Order.DESC;
+            if ("age".equals(order.getProperty())) {
+                keyset = keyset == null
+                        ? Keyset.orderBy(member.age, direction, MemberTeamDto::getAge)
+                        : keyset.thenBy(member.age, direction, MemberTeamDto::getAge);
+            } else {
+                throw new IllegalArgumentException("Unsupported keyset sort property: " + order.getProperty());
+            }
+        }
+
+        return keyset == null
+                ? Keyset.orderBy(member.id, Order.ASC, MemberTeamDto::getMemberId)
+                : keyset.thenBy(member.id, Order.ASC, MemberTeamDto::getMemberId);
     }
 
     private BooleanExpression usernameEq(String username) {
@@ -160,7 +342,32 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
         return ageLoe != null ? member.age.loe(ageLoe) : null;
     }
 
-    private BooleanExpression ageBetween(MemberSearchCondition condition) {
-        return ageGoe(condition.getAgeGoe()).and(ageLoe(condition.getAgeLoe()));
+    /*
+     *  같은 검색 조건(+ 페이지)으로 동시에 들어온 호출은 쿼리를 한 번만 실행하고 결과를 함께 받는다. (SingleFlight)
+     *  키는 바인딩되는 검색 값 -> 빈 문자열 / null 처럼 같은 쿼리가 되는 조건은 같은 키가 된다.
+     *  키에 member / team 데이터 버전도 넣는다. -> 변경이 커밋된 뒤의 호출은 그 전에 시작된 실행을 함께 받지 않는다.
+     *  (MemberController는 호출 전에 읽은 버전으로 ETag를 만든다. -> 결과는 항상 그 버전 이후에 읽은 것이다.)
+     * */
+    @Override
+    public CompletableFuture<List<MemberTeamDto>> searchAsync(MemberSearchCondition condition) {
+        return singleFlight.execute("search",
+                Arrays.asList("search", MemberSearchParams.bind(condition), dataVersion.version(MemberSearchParams.TABLES)),
+                () -> asyncQueryExecutor.supply(() -> search(condition)));
+    }
+
+    @Override
+    public CompletableFuture<Page<MemberTeamDto>> searchPageSimpleAsync(MemberSearchCondition condition, Pageable pageable) {
+        return singleFlight.execute("searchPageSimple",
+                Arrays.asList("searchPageSimple", MemberSearchParams.bind(condition), pageable,
+                        dataVersion.version(MemberSearchParams.TABLES)),
+                () -> asyncQueryExecutor.supply(() -> searchPageSimple(condition, pageable)));
+    }
+
+    @Override
+    public CompletableFuture<Page<MemberTeamDto>> searchPageComplexAsync(MemberSearchCondition condition, Pageable pageable) {
+        return singleFlight.execute("searchPageComplex",
+                Arrays.asList("searchPageComplex", MemberSearchParams.bind(condition), pageable,
+                        dataVersion.version(MemberSearchParams.TABLES)),
+                () -> asyncQueryExecutor.supply(() -> searchPageComplex(condition, pageable)));
     }
 }
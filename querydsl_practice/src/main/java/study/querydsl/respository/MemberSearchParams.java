@@ -0,0 +1,106 @@
+package study.querydsl.respository;
+
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/*
+ *  MemberSearchCondition을 Param 자리표시자로 검색하기 위한 도구
+ *  shape : 값이 있는 검색 조건 필드를 비트로 표현한 것 -> shape가 같으면 where 절(JPQL)도 같다.
+ *  bind  : 실제 검색 값을 Param에 바인딩한다.
+ * */
+final class MemberSearchParams {
+
+    static final Param<String> USERNAME = new Param<>(String.class, "username");
+    static final Param<String> TEAM_NAME = new Param<>(String.class, "teamName");
+    static final Param<Integer> AGE_GOE = new Param<>(Integer.class, "ageGoe");
+    static final Param<Integer> AGE_LOE = new Param<>(Integer.class, "ageLoe");
+
+    // 검색이 읽는 테이블 -> SingleFlight 키에 넣는 데이터 버전(DataVersion)
+    static final String[] TABLES = {"member", "team"};
+
+    private static final int USERNAME_SET = 1;
+    private static final int TEAM_NAME_SET = 1 << 1;
+    private static final int AGE_GOE_SET = 1 << 2;
+    private static final int AGE_LOE_SET = 1 << 3;
+
+    private MemberSearchParams() {
+    }
+
+    static int shape(MemberSearchCondition condition) {
+        int shape = 0;
+        if (StringUtils.hasText(condition.getUsername())) {
+            shape |= USERNAME_SET;
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            shape |= TEAM_NAME_SET;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= AGE_GOE_SET;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= AGE_LOE_SET;
+        }
+        return shape;
+    }
+
+    static Map<ParamExpression<?>, Object> bind(MemberSearchCondition condition) {
+        Map<ParamExpression<?>, Object> params = new HashMap<>();
+        if (StringUtils.hasText(condition.getUsername())) {
+            params.put(USERNAME, condition.getUsername());
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            params.put(TEAM_NAME, condition.getTeamName());
+        }
+        if (condition.getAgeGoe() != null) {
+            params.put(AGE_GOE, condition.getAgeGoe());
+        }
+        if (condition.getAgeLoe() != null) {
+            params.put(AGE_LOE, condition.getAgeLoe());
+        }
+        return params;
+    }
+
+    /*
+     *  팀 이름 조건이 있으면 팀이 없는 회원은 어차피 걸러지기 때문에 inner join 으로 바꿔도 결과가 같다.
+     *  left join은 DB가 항상 member부터 읽기 때문에 team.name 인덱스를 사용하지 못하고 member 전체를 읽는다.
+     *  -> inner join이면 idx_team_name으로 팀을 찾고, team_id 인덱스로 회원을 찾는다.
+     * */
+    static <T> JPAQuery<T> joinTeam(JPAQuery<T> query, int shape) {
+        return (shape & TEAM_NAME_SET) != 0
+                ? query.join(member.team, team)
+                : query.leftJoin(member.team, team);
+    }
+
+    static BooleanExpression usernameEq(int shape) {
+        return (shape & USERNAME_SET) != 0 ? member.username.eq(USERNAME) : null;
+    }
+
+    static BooleanExpression teamNameEq(int shape) {
+        return (shape & TEAM_NAME_SET) != 0 ? team.name.eq(TEAM_NAME) : null;
+    }
+
+    static BooleanExpression ageGoe(int shape) {
+        return (shape & AGE_GOE_SET) != 0 ? member.age.goe(AGE_GOE) : null;
+    }
+
+    static BooleanExpression ageLoe(int shape) {
+        return (shape & AGE_LOE_SET) != 0 ? member.age.loe(AGE_LOE) : null;
+    }
+
+    // 검색 조건 전체 -> MemberSnapshot에서 같은 조건으로 평가한다. (조건이 없으면 null)
+    static Predicate where(int shape) {
+        return ExpressionUtils.allOf(usernameEq(shape), teamNameEq(shape), ageGoe(shape), ageLoe(shape));
+    }
+}
@@ -0,0 +1,824 @@
+package study.querydsl.respository;
+
+import com.querydsl.codegen.utils.ECJEvaluatorFactory;
+import com.querydsl.collections.CollQuery;
+import com.querydsl.collections.CollQueryTemplates;
+import com.querydsl.collections.DefaultEvaluatorFactory;
+import com.querydsl.collections.DefaultQueryEngine;
+import com.querydsl.collections.QueryEngine;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.support.ReplaceVisitor;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.support.DataChangeTracker;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/*
+ *  회원 검색 결과(MemberTeamDto) 전체를 메모리에 들고 있다가 같은 검색 조건(Predicate)을 querydsl-collections로 평가한다.
+ *  -> DB를 거치지 않기 때문에 회원 수가 적으면 수 마이크로초 안에 끝난다.
+ *
+ *  - 커밋된 Member / Team 엔티티 변경(insert / update / delete)은 Hibernate 커밋 이후 이벤트로 바로 반영한다.
+ *  - 엔티티를 거치지 않는 변경(벌크 연산, 네이티브 SQL)이 감지되거나 max-age 가 지나면 stale 상태가 되고,
+ *    백그라운드에서 전체를 다시 읽는 동안 검색은 JPA로 실행된다.
+ *  - 읽기/쓰기 트랜잭션 안에서는 아직 커밋되지 않은 변경을 볼 수 있어야 하기 때문에 사용하지 않는다.
+ *  - 회원 수가 max-rows 를 넘으면 메모리에 올리지 않고 항상 JPA로 검색한다.
+ *    max-rows 를 넘었거나 읽기에 실패했으면 max-age 가 지날 때까지 다시 읽지 않는다. (검색마다 count 쿼리가 나가지 않도록)
+ *
+ *  스냅샷의 행은 MemberIndex의 컬럼에만 있다. 인덱스는 전체를 다시 읽을 때 바로 만든다.
+ *  검색과 건수는 인덱스(나이 / 이름 / 팀 이름 비트맵)로 후보를 구하고,
+ *  해시가 충돌한 경우에만 후보를 검색 조건(Predicate)으로 다시 확인한다.
+ *  인덱스를 만든 뒤에 바뀐 회원은 현재 행을 따로(Indexed.changedRows) 가지고,
+ *  인덱스 결과에서 빼고 현재 행을 검색 조건으로 확인해서 더한다.
+ *  -> 검색 스레드는 인덱스를 다시 만들지 않는다. 변경이 반영되면 index.rebuild-delay 뒤에 백그라운드에서 한 번 다시 만든다.
+ *     (그 사이의 변경은 한 번의 재생성으로 합쳐진다.)
+ *
+ *  index.off-heap=true 이면 행과 비트맵이 모두 힙 밖에 있다. -> 힙에는 인덱스를 만든 뒤에 바뀐 회원의 행과 팀 이름만 남는다.
+ *  다시 만들거나 다시 읽어서 밀려난 인덱스는 읽고 있던 검색이 끝나면 바로 해제한다. (MemberIndex.retire)
+ *  content 는 member_id 순서만 지원한다. -> Pageable에 sort가 있으면 스냅샷을 사용하지 않는다.
+ * */
+@Slf4j
+@Component
+public class MemberSnapshot implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final PathBuilder<MemberTeamDto> row = new PathBuilder<>(MemberTeamDto.class, "row");
+
+    // 엔티티 경로 -> MemberTeamDto 프로퍼티 (검색 조건은 member, team 경로로 만들어진다.)
+    private static final Map<Path<?>, Path<?>> COLUMNS = Map.of(
+            member.id, row.getNumber("memberId", Long.class),
+            member.username, row.getString("username"),
+            member.age, row.getNumber("age", Integer.class),
+            team.id, row.getNumber("teamId", Long.class),
+            team.name, row.getString("teamName"));
+
+    // 스냅샷에 없는 경로를 사용하는 조건 -> JPA로 검색한다.
+    private static final Predicate UNSUPPORTED = row.isNull();
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long maxRows;
+    private final long maxAgeNanos;
+    private final boolean offHeapIndex;
+    private final long rebuildDelayNanos;
+
+    // 조건마다 평가 코드를 한 번만 컴파일한다. (ECJ -> Spring Boot 실행 jar 안의 클래스도 찾을 수 있다.)
+    private final QueryEngine queryEngine = new DefaultQueryEngine(new DefaultEvaluatorFactory(
+            CollQueryTemplates.DEFAULT, new ECJEvaluatorFactory(MemberSnapshot.class.getClassLoader())));
+    private final Map<Integer, Predicate> translated = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("member-snapshot-"));
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private final Object refreshLock = new Object();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    // 변경이 반영될 때마다 증가한다. -> 다시 읽는 동안 변경이 있었으면 읽은 결과를 최신으로 보지 않는다.
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+    private volatile boolean fresh;
+    private volatile long loadedAt;
+    // 마지막으로 전체를 읽으려고 한 시점과 결과 -> max-rows 초과나 실패 뒤에는 max-age 동안 다시 읽지 않는다.
+    private volatile long attemptedAt;
+    private volatile boolean overMaxRows;
+    private volatile boolean loadFailed;
+
+    public MemberSnapshot(EntityManagerFactory entityManagerFactory,
+                          JPAQueryFactory queryFactory,
+                          PlatformTransactionManager transactionManager,
+                          DataChangeTracker dataChangeTracker,
+                          @Value("${querydsl.snapshot.enabled:false}") boolean enabled,
+                          @Value("${querydsl.snapshot.max-rows:100000}") long maxRows,
+                          @Value("${querydsl.snapshot.max-age:10m}") Duration maxAge,
+                          @Value("${querydsl.snapshot.index.off-heap:false}") boolean offHeapIndex,
+                          @Value("${querydsl.snapshot.index.rebuild-delay:1s}") Duration rebuildDelay) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.queryFactory = queryFactory;
+        // replica가 설정되어 있어도 primary에서 읽도록 readOnly를 붙이지 않는다. (replica 지연만큼 놓치는 변경이 없도록)
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.maxRows = maxRows;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.offHeapIndex = offHeapIndex;
+        this.rebuildDelayNanos = rebuildDelay.toNanos();
+
+        if (enabled) {
+            EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry().getService(EventListenerRegistry.class);
+            registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+            registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+            registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+            dataChangeTracker.addStatementListener(this::statementExecuted);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        if (enabled) {
+            refreshAsync();
+        }
+    }
+
+    public boolean isFresh() {
+        return enabled && fresh && System.nanoTime() - loadedAt < maxAgeNanos;
+    }
+
+    /*
+     *  스냅샷을 사용할 수 없으면 Optional.empty() -> 호출한 쪽에서 JPA로 검색한다.
+     *  결과는 member_id 순서
+     * */
+    public Optional<List<MemberTeamDto>> search(MemberSearchCondition condition) {
+        Indexed indexed = acquire(usable());
+        if (indexed == null) {
+            return Optional.empty();
+        }
+
+        // 인덱스의 행은 매번 새로 만들고 바뀐 회원의 행은 복사한다. -> 호출한 쪽에서 값을 바꿔도 스냅샷은 그대로다.
+        try {
+            return matching(indexed, condition);
+        } finally {
+            indexed.index.release();
+        }
+    }
+
+    /*
+     *  검색 결과의 한 페이지와 전체 건수를 같은 스냅샷에서 구한다. -> content 와 totalElements가 항상 맞는다.
+     *  (content는 DB, total은 스냅샷에서 구하면 커밋 직후나 replica 지연이 있을 때 서로 다를 수 있다.)
+     *  content 는 member_id 순서 -> Pageable에 sort가 있으면 empty (JPA로 검색한다.)
+     *
+     *  total은 비트맵으로 세고, content는 [offset, offset + size) 위치의 회원만 꺼낸다.
+     *  (해시가 충돌한 조건만 후보를 모두 다시 확인한 결과에서 자른다.)
+     * */
+    public Optional<Page<MemberTeamDto>> page(MemberSearchCondition condition, Pageable pageable) {
+        if (pageable.getSort().isSorted()) {
+            return Optional.empty();
+        }
+        Indexed indexed = acquire(usable());
+        if (indexed == null) {
+            return Optional.empty();
+        }
+
+        try {
+            if (!indexed.index.isExact(condition)) {
+                return matching(indexed, condition).map(rows -> {
+                    int from = (int) Math.min(pageable.getOffset(), rows.size());
+                    int to = Math.min(from + pageable.getPageSize(), rows.size());
+                    return new PageImpl<>(new ArrayList<>(rows.subList(from, to)), pageable, rows.size());
+                });
+            }
+
+            Set<Long> changedIds = Set.copyOf(indexed.changedIds.keySet());
+            ImmutableRoaringBitmap positions = indexed.index.select(condition);
+            return filter(indexed.changedRows(changedIds), condition).map(changedRows -> {
+                changedRows.sort(Comparator.comparing(MemberTeamDto::getMemberId));
+                long total = indexed.unchangedCount(positions, changedIds) + changedRows.size();
+                List<MemberTeamDto> content = indexed.window(positions, changedIds, changedRows,
+                        pageable.getOffset(), pageable.getPageSize());
+                return new PageImpl<>(content, pageable, total);
+            });
+        } finally {
+            indexed.index.release();
+        }
+    }
+
+    /*
+     *  조건에 맞는 회원 수 -> 비트맵 교집합의 크기라서 회원을 하나도 꺼내지 않는다.
+     *  인덱스를 만든 뒤에 바뀐 회원만 인덱스 결과에서 빼고 현재 행으로 다시 센다.
+     * */
+    public OptionalLong count(MemberSearchCondition condition) {
+        Indexed indexed = acquire(usable());
+        if (indexed == null) {
+            return OptionalLong.empty();
+        }
+
+        try {
+            if (!indexed.index.isExact(condition)) {
+                return matching(indexed, condition)
+                        .map(rows -> OptionalLong.of(rows.size()))
+                        .orElse(OptionalLong.empty());
+            }
+
+            // 바뀐 회원은 한 번만 복사해서 인덱스 결과에서 빼는 데와 다시 세는 데 함께 사용한다.
+            Set<Long> changedIds = Set.copyOf(indexed.changedIds.keySet());
+            if (changedIds.isEmpty()) {
+                return indexed.index.count(condition);
+            }
+            ImmutableRoaringBitmap positions = indexed.index.select(condition);
+            return filter(indexed.changedRows(changedIds), condition)
+                    .map(rows -> OptionalLong.of(indexed.unchangedCount(positions, changedIds) + rows.size()))
+                    .orElse(OptionalLong.empty());
+        } finally {
+            indexed.index.release();
+        }
+    }
+
+    /*
+     *  조건에 맞는 행 (member_id 순서, 새로 만든 행) -> 스냅샷으로 평가할 수 없는 조건이면 empty
+     *  인덱스 결과 중 인덱스를 만든 뒤에 바뀐 회원은 빼고, 바뀐 회원의 현재 행을 검색 조건으로 걸러서 더한다.
+     *  인덱스를 acquire 한 상태에서 호출한다.
+     * */
+    private Optional<List<MemberTeamDto>> matching(Indexed indexed, MemberSearchCondition condition) {
+        Set<Long> changedIds = Set.copyOf(indexed.changedIds.keySet());
+        List<MemberTeamDto> candidates = indexed.rows(indexed.index.select(condition), changedIds::contains);
+        List<MemberTeamDto> changedRows = indexed.changedRows(changedIds);
+        if (indexed.index.isExact(condition) && changedRows.isEmpty()) {
+            return Optional.of(candidates);
+        }
+
+        // 해시가 충돌했으면 후보도 검색 조건으로 다시 거른다.
+        Optional<List<MemberTeamDto>> result = indexed.index.isExact(condition)
+                ? filter(changedRows, condition).map(rows -> concat(candidates, rows))
+                : filter(concat(candidates, changedRows), condition);
+        if (!changedRows.isEmpty()) {
+            result.ifPresent(rows -> rows.sort(Comparator.comparing(MemberTeamDto::getMemberId)));
+        }
+        return result;
+    }
+
+    private Optional<List<MemberTeamDto>> filter(List<MemberTeamDto> rows, MemberSearchCondition condition) {
+        int shape = MemberSearchParams.shape(condition);
+        // 조건이 없으면 모두 맞는다.
+        if (rows.isEmpty() || shape == 0) {
+            return Optional.of(new ArrayList<>(rows));
+        }
+        Predicate where = translated.computeIfAbsent(shape, key -> translate(MemberSearchParams.where(key)));
+        if (where == UNSUPPORTED) {
+            return Optional.empty();
+        }
+        CollQuery<MemberTeamDto> query = new CollQuery<MemberTeamDto>(queryEngine)
+                .from(row, rows)
+                .where(where)
+                .select(row);
+        MemberSearchParams.bind(condition).forEach((param, value) -> bind(query, param, value));
+        return Optional.of(new ArrayList<>(query.fetch()));
+    }
+
+    private static List<MemberTeamDto> concat(List<MemberTeamDto> first, List<MemberTeamDto> second) {
+        List<MemberTeamDto> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+
+    /*
+     *  스냅샷의 인덱스를 읽을 수 있게 잡아둔다. -> 다 읽으면 indexed.index.release()
+     *  잡기 전에 인덱스가 다시 만들어져서 해제되었으면 새 인덱스를 잡는다.
+     *  스냅샷이 통째로 밀려나서 해제되었으면 null (JPA로 검색한다.)
+     * */
+    private static Indexed acquire(Snapshot current) {
+        if (current == null) {
+            return null;
+        }
+        while (true) {
+            Indexed indexed = current.indexed;
+            if (indexed.index.acquire()) {
+                return indexed;
+            }
+            if (current.indexed.index == indexed.index) {
+                return null;
+            }
+        }
+    }
+
+    // 읽기/쓰기 트랜잭션 안이거나 최신 상태가 아니면 null
+    private Snapshot usable() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        if (!isFresh()) {
+            if (enabled && !isBackingOff()) {
+                refreshAsync();
+            }
+            return null;
+        }
+        return snapshot;
+    }
+
+    private boolean isBackingOff() {
+        return (overMaxRows || loadFailed) && System.nanoTime() - attemptedAt < maxAgeNanos;
+    }
+
+    private Indexed index(List<MemberTeamDto> rows) {
+        return new Indexed(MemberIndex.build(rows, offHeapIndex));
+    }
+
+    // 변경이 반영되면 rebuild-delay 뒤에 인덱스를 다시 만든다. 이미 예약되어 있으면 그 재생성에 합쳐진다.
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            try {
+                loader.schedule(() -> {
+                    try {
+                        rebuildIndex();
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to rebuild member index", e);
+                    }
+                }, rebuildDelayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // 종료 중
+                rebuildScheduled.set(false);
+            }
+        }
+    }
+
+    /*
+     *  이전 인덱스의 바뀌지 않은 행과 바뀐 회원의 현재 행으로 인덱스를 다시 만든다.
+     *  만드는 동안 검색은 이전 인덱스와 바뀐 회원으로 처리된다.
+     *  만드는 동안 반영된 변경은 새 인덱스의 바뀐 회원으로 넘기고, 이전 인덱스는 retire 한다.
+     * */
+    void rebuildIndex() {
+        rebuildScheduled.set(false);
+        Snapshot current;
+        Indexed indexed;
+        long startVersion;
+        Set<Long> changedIds;
+        List<MemberTeamDto> changedRows;
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.indexed.changedIds.isEmpty()) {
+                return;
+            }
+            indexed = current.indexed;
+            startVersion = version.get();
+            changedIds = Set.copyOf(indexed.changedIds.keySet());
+            changedRows = indexed.changedRows(changedIds);
+            // 스냅샷의 인덱스는 밀려나기 전까지 retire 되지 않는다. (변경 반영과 retire는 모두 synchronized)
+            indexed.index.acquire();
+        }
+
+        List<MemberTeamDto> rows;
+        try {
+            rows = indexed.rows(indexed.index.select(new MemberSearchCondition()), changedIds::contains);
+        } finally {
+            indexed.index.release();
+        }
+        rows.addAll(changedRows);
+        Indexed rebuilt = index(rows);
+
+        synchronized (this) {
+            if (snapshot != current) {
+                rebuilt.index.retire();
+                return;
+            }
+            Indexed latest = current.indexed;
+            latest.changedIds.forEach((memberId, changedVersion) -> {
+                if (changedVersion > startVersion) {
+                    MemberTeamDto changedRow = latest.changedRows.get(memberId);
+                    if (changedRow != null) {
+                        rebuilt.changedRows.put(memberId, changedRow);
+                    }
+                    rebuilt.changedIds.put(memberId, changedVersion);
+                }
+            });
+            current.indexed = rebuilt;
+            latest.index.retire();
+        }
+    }
+
+    public void refreshAsync() {
+        if (loading.compareAndSet(false, true)) {
+            loader.execute(() -> {
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to load member snapshot", e);
+                } finally {
+                    loading.set(false);
+                }
+            });
+        }
+    }
+
+    /*
+     *  전체를 다시 읽는다. 읽는 동안 변경이 반영되었으면 stale 상태로 남겨두고 다음 검색에서 다시 읽는다.
+     *  다시 읽기는 한 번에 하나씩 -> 먼저 시작한 읽기가 나중에 끝나서 더 최신 결과를 덮어쓰지 않는다.
+     * */
+    public void refresh() {
+        synchronized (refreshLock) {
+            long startVersion = version.get();
+            Map<Long, String> teamNames = new HashMap<>();
+            List<MemberTeamDto> rows;
+            attemptedAt = System.nanoTime();
+            try {
+                rows = transactionTemplate.execute(status -> load(teamNames));
+            } catch (RuntimeException e) {
+                loadFailed = true;
+                throw e;
+            }
+            loadFailed = false;
+            overMaxRows = rows == null;
+            // 인덱스는 트랜잭션(커넥션)을 돌려준 뒤에 만든다. 읽은 행은 인덱스로 옮긴 뒤 버린다.
+            Snapshot loaded = rows != null ? new Snapshot(teamNames, index(rows)) : null;
+
+            synchronized (this) {
+                retire(snapshot);
+                snapshot = loaded;
+                fresh = loaded != null && version.get() == startVersion;
+                loadedAt = System.nanoTime();
+            }
+        }
+    }
+
+    // 다시 읽는 중이면 true
+    boolean isLoading() {
+        return loading.get();
+    }
+
+    // 회원 수가 max-rows 를 넘으면 null
+    private List<MemberTeamDto> load(Map<Long, String> teamNames) {
+        Long count = queryFactory
+                .select(member.count())
+                .from(member)
+                .fetchOne();
+        if (count != null && count > maxRows) {
+            log.warn("Member snapshot disabled: {} members exceed querydsl.snapshot.max-rows={}", count, maxRows);
+            return null;
+        }
+
+        for (Tuple tuple : queryFactory.select(team.id, team.name).from(team).fetch()) {
+            teamNames.put(tuple.get(team.id), tuple.get(team.name));
+        }
+        List<MemberTeamDto> rows = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .fetch();
+        log.info("Member snapshot loaded: {} members, {} teams", rows.size(), teamNames.size());
+        return rows;
+    }
+
+    private static void retire(Snapshot previous) {
+        if (previous != null) {
+            previous.indexed.index.retire();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loader.shutdownNow();
+        synchronized (this) {
+            retire(snapshot);
+            snapshot = null;
+        }
+    }
+
+    /*
+     *  member / team 테이블의 insert / update / delete SQL이 실행될 때 호출된다.
+     *  flush 중이 아니면 엔티티 이벤트가 없는 변경(벌크 연산) -> 지금 바로, 그리고 커밋/롤백 이후에 한 번 더 stale로 표시한다.
+     *  (커밋 전에 다시 읽기 시작한 경우에도 커밋 이후의 표시로 다시 읽게 된다.)
+     * */
+    private void statementExecuted(String table) {
+        if (!isSnapshotTable(table) || isEntityFlush()) {
+            return;
+        }
+        markStale();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    markStale();
+                }
+            });
+        }
+    }
+
+    private boolean isEntityFlush() {
+        EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager.getResource(entityManagerFactory);
+        return holder != null
+                && holder.getEntityManager().unwrap(SessionImplementor.class).getPersistenceContextInternal().isFlushing();
+    }
+
+    private static boolean isSnapshotTable(String table) {
+        return "member".equalsIgnoreCase(table) || "team".equalsIgnoreCase(table);
+    }
+
+    private synchronized void markStale() {
+        version.incrementAndGet();
+        fresh = false;
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == Member.class || persister.getMappedClass() == Team.class;
+    }
+
+    // Hibernate 5 에서는 abstract 라서 구현해야 한다. -> 이름이 고쳐진 requiresPostCommitHandling 으로 넘긴다.
+    @Deprecated
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getEntity(), false);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getEntity(), false);
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getEntity(), true);
+    }
+
+    // 커밋에 실패한 변경은 반영하지 않는다.
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    private synchronized void changed(Object entity, boolean deleted) {
+        long changedVersion = version.incrementAndGet();
+        Snapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+
+        if (entity instanceof Team) {
+            Team changedTeam = (Team) entity;
+            if (deleted) {
+                current.teamNames.remove(changedTeam.getId());
+            } else {
+                current.teamNames.put(changedTeam.getId(), changedTeam.getName());
+            }
+            // 팀의 회원을 모두 바꾼 복사본으로 한 번에 교체한다. -> 검색 스레드가 일부 회원만 바뀐 상태를 보지 않는다.
+            // (synchronized 안에서는 스냅샷의 인덱스가 retire 되지 않기 때문에 acquire 없이 읽는다.)
+            Long teamId = changedTeam.getId();
+            String teamName = deleted ? null : changedTeam.getName();
+            Indexed indexed = current.indexed.copy();
+            indexed.changedRows.replaceAll((memberId, memberTeamDto) -> {
+                if (!teamId.equals(memberTeamDto.getTeamId())) {
+                    return memberTeamDto;
+                }
+                indexed.changedIds.put(memberId, changedVersion);
+                return withTeam(memberTeamDto, deleted ? null : teamId, teamName);
+            });
+            for (int position : indexed.index.positionsOfTeam(teamId)) {
+                long memberId = indexed.index.memberId(position);
+                if (!indexed.changedIds.containsKey(memberId)) {
+                    indexed.changedRows.put(memberId, withTeam(indexed.index.row(position), deleted ? null : teamId, teamName));
+                    indexed.changedIds.put(memberId, changedVersion);
+                }
+            }
+            current.indexed = indexed;
+            scheduleRebuild();
+            return;
+        }
+
+        // 검색 스레드는 changedIds를 보고 changedRows를 읽는다. -> 행을 먼저 바꾸고 changedIds에 넣는다.
+        Member changedMember = (Member) entity;
+        Indexed indexed = current.indexed;
+        if (deleted) {
+            indexed.changedRows.remove(changedMember.getId());
+            indexed.changedIds.put(changedMember.getId(), changedVersion);
+            scheduleRebuild();
+            return;
+        }
+
+        Team memberTeam = changedMember.getTeam();
+        Long teamId = null;
+        String teamName = null;
+        if (memberTeam != null) {
+            teamId = (Long) entityManagerFactory.getPersistenceUnitUtil().getIdentifier(memberTeam);
+            if (Hibernate.isInitialized(memberTeam)) {
+                teamName = memberTeam.getName();
+            } else if (current.teamNames.containsKey(teamId)) {
+                teamName = current.teamNames.get(teamId);
+            } else {
+                // 스냅샷에 없는 팀 -> 다시 읽는다.
+                markStale();
+                return;
+            }
+        }
+        indexed.changedRows.put(changedMember.getId(),
+                new MemberTeamDto(changedMember.getId(), changedMember.getUsername(), changedMember.getAge(), teamId, teamName));
+        indexed.changedIds.put(changedMember.getId(), changedVersion);
+        scheduleRebuild();
+    }
+
+    private static MemberTeamDto withTeam(MemberTeamDto memberTeamDto, Long teamId, String teamName) {
+        return new MemberTeamDto(memberTeamDto.getMemberId(), memberTeamDto.getUsername(), memberTeamDto.getAge(),
+                teamId, teamName);
+    }
+
+    private static Predicate translate(Predicate where) {
+        AtomicBoolean supported = new AtomicBoolean(true);
+        Expression<?> result = where.accept(new ReplaceVisitor<Void>() {
+            @Override
+            public Expression<?> visit(Path<?> expr, Void context) {
+                Path<?> column = COLUMNS.get(expr);
+                if (column == null) {
+                    supported.set(false);
+                    return expr;
+                }
+                return column;
+            }
+        }, null);
+        return supported.get() ? (Predicate) result : UNSUPPORTED;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void bind(CollQuery<MemberTeamDto> query, ParamExpression<?> param, Object value) {
+        query.set((ParamExpression<Object>) param, value);
+    }
+
+    private static MemberTeamDto copy(MemberTeamDto memberTeamDto) {
+        return new MemberTeamDto(memberTeamDto.getMemberId(), memberTeamDto.getUsername(), memberTeamDto.getAge(),
+                memberTeamDto.getTeamId(), memberTeamDto.getTeamName());
+    }
+
+    // teamNames는 변경을 반영할 때(synchronized)만 사용한다.
+    // indexed는 스냅샷을 공개하기 전에 만들고, 팀 변경이나 인덱스를 다시 만들면 통째로 바꾼다.
+    private static class Snapshot {
+        private final Map<Long, String> teamNames;
+        private volatile Indexed indexed;
+
+        private Snapshot(Map<Long, String> teamNames, Indexed indexed) {
+            this.teamNames = teamNames;
+            this.indexed = indexed;
+        }
+    }
+
+    // 인덱스와 인덱스를 만든 뒤에 바뀐 회원 (인덱스의 위치는 member_id 순서)
+    private static class Indexed {
+        private final MemberIndex index;
+        // 인덱스를 만든 뒤에 바뀐(추가 / 수정 / 삭제) 회원 -> 바뀐 시점의 version
+        private final Map<Long, Long> changedIds = new ConcurrentHashMap<>();
+        // 바뀐 회원의 현재 행 (삭제된 회원은 없다.)
+        private final Map<Long, MemberTeamDto> changedRows = new ConcurrentHashMap<>();
+
+        private Indexed(MemberIndex index) {
+            this.index = index;
+        }
+
+        // 같은 인덱스에 바뀐 회원만 따로 가진 복사본
+        private Indexed copy() {
+            Indexed copy = new Indexed(index);
+            copy.changedRows.putAll(changedRows);
+            copy.changedIds.putAll(changedIds);
+            return copy;
+        }
+
+        // 바뀐 회원의 현재 행을 복사한다. (삭제된 회원은 빠진다.)
+        private List<MemberTeamDto> changedRows(Set<Long> changedIds) {
+            return changedIds.stream()
+                    .map(changedRows::get)
+                    .filter(Objects::nonNull)
+                    .map(MemberSnapshot::copy)
+                    .collect(Collectors.toList());
+        }
+
+        // 인덱스 결과 중 바뀌지 않은 회원 수
+        private long unchangedCount(ImmutableRoaringBitmap positions, Set<Long> changedIds) {
+            return positions.getLongCardinality() - changedIds.stream()
+                    .mapToInt(index::position)
+                    .filter(position -> position >= 0 && positions.contains(position))
+                    .count();
+        }
+
+        /*
+         *  바뀌지 않은 인덱스 결과와 바뀐 회원(changedRows, member_id 순서)을 member_id 순서로 합쳤을 때
+         *  [offset, offset + size) 에 있는 회원만 꺼내서 돌려준다.
+         * */
+        private List<MemberTeamDto> window(ImmutableRoaringBitmap positions, Set<Long> changedIds,
+                                           List<MemberTeamDto> changedRows, long offset, int size) {
+            List<MemberTeamDto> result = new ArrayList<>();
+            PeekableIntIterator iterator = positions.getIntIterator();
+            long skip = offset;
+            if (changedIds.isEmpty()) {
+                // 바뀐 회원이 없으면 offset 번째 위치로 바로 이동한다.
+                if (offset >= positions.getLongCardinality()) {
+                    return result;
+                }
+                iterator.advanceIfNeeded(positions.select((int) offset));
+                skip = 0;
+            }
+
+            int unchanged = nextUnchanged(iterator, changedIds);
+            int next = 0;
+            while (result.size() < size) {
+                MemberTeamDto changed = next < changedRows.size() ? changedRows.get(next) : null;
+                if (unchanged < 0 && changed == null) {
+                    break;
+                }
+                boolean takeUnchanged = changed == null
+                        || (unchanged >= 0 && index.memberId(unchanged) < changed.getMemberId());
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    result.add(takeUnchanged ? index.row(unchanged) : changed);
+                }
+                if (takeUnchanged) {
+                    unchanged = nextUnchanged(iterator, changedIds);
+                } else {
+                    next++;
+                }
+            }
+            return result;
+        }
+
+        // 다음 바뀌지 않은 회원의 위치 (없으면 -1)
+        private int nextUnchanged(PeekableIntIterator iterator, Set<Long> changedIds) {
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                if (!changedIds.contains(index.memberId(position))) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        private List<MemberTeamDto> rows(ImmutableRoaringBitmap positions, LongPredicate changed) {
+            List<MemberTeamDto> result = new ArrayList<>(positions.getCardinality());
+            IntIterator iterator = positions.getIntIterator();
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                if (!changed.test(index.memberId(position))) {
+                    result.add(index.row(position));
+                }
+            }
+            return result;
+        }
+    }
+}
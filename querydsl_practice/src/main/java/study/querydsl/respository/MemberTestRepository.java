@@ -1,24 +1,45 @@
 package study.querydsl.respository;
 
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.ParamExpression;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Param;
 import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
 import static study.querydsl.entity.QMember.*;
 import static study.querydsl.entity.QTeam.team;
+import study.querydsl.respository.support.BulkChunkOptions;
+import study.querydsl.respository.support.Keyset;
+import study.querydsl.respository.support.KeysetPage;
+import study.querydsl.respository.support.PreparedQuery;
 import study.querydsl.respository.support.Querydsl4RepositorySupport;
 
+import java.util.Collections;
 import java.util.List;
 
+/*
+ *  조회는 readOnly 트랜잭션 -> replica가 설정되어 있으면 replica에서 읽는다. (ReplicaRoutingDataSource)
+ * */
 @Repository
+@Transactional(readOnly = true)
 public class MemberTestRepository extends Querydsl4RepositorySupport {
 
 
+    private static final Param<String> USERNAME = new Param<>(String.class, "username");
+
+    // application.conf 에 크기, 만료 시간이 설정된 쿼리 캐시 영역
+    public static final String MEMBER_SEARCH_REGION = "memberSearch";
+
     public MemberTestRepository() {
         super(Member.class);
     }
@@ -34,6 +55,51 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                 .fetch();
     }
 
+    public List<Member> findByUsername(String username) {
+        PreparedQuery<Member> query = prepared("findByUsername", queryFactory -> queryFactory
+                .selectFrom(member)
+                .where(member.username.eq(USERNAME)));
+        return query.fetch(getEntityManager(), Collections.<ParamExpression<?>, Object>singletonMap(USERNAME, username));
+    }
+
+    // 같은 검색 조건이면 member, team 테이블이 변경되기 전까지 쿼리 캐시의 결과를 사용한다.
+    public List<MemberTeamDto> searchCacheable(MemberSearchCondition condition) {
+        return cacheable(select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                ), MEMBER_SEARCH_REGION)
+                .fetch();
+    }
+
+    /*
+     *  QuerydslBasicTest.bulkUpdate / bulkDelete 를 id 범위 청크로 나눠서 실행한다.
+     *  청크마다 커밋되기 때문에 현재 영속성 컨텍스트의 회원은 DB와 달라질 수 있다.
+     *  바깥 트랜잭션 없이 실행한다. -> 청크 사이(throttle)에 커넥션을 잡고 있지 않고, 청크마다 커넥션 하나만 사용한다.
+     * */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long bulkRenameYoungerThan(int age, String username, BulkChunkOptions options) {
+        return chunkedBulk(member.id, options, queryFactory -> queryFactory
+                .update(member)
+                .set(member.username, username)
+                .where(member.age.lt(age)));
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long bulkDeleteOlderThan(int age, BulkChunkOptions options) {
+        return chunkedBulk(member.id, options, queryFactory -> queryFactory
+                .delete(member)
+                .where(member.age.gt(age)));
+    }
+
     public Page<Member> searchPageByApplyPage(MemberSearchCondition condition, Pageable pageable) {
         JPAQuery<Member> query = selectFrom(member)
                 .leftJoin(member.team, team)
@@ -44,10 +110,10 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
                 );
 
 
-        List<Member> content = getQuerydsl().applyPagination(pageable, query)
-                .fetch();
+        JPAQuery<Long> countQuery = countQuery(query);
 
-        return PageableExecutionUtils.getPage(content, pageable, query::fetchCount);
+        return getPageQueryExecutor().getPage(pageable, () -> getQuerydsl().applyPagination(pageable, query)
+                .fetch(), countQuery);
     }
 
     public Page<Member> applyPagination(MemberSearchCondition condition, Pageable pageable) {
@@ -62,6 +128,18 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
         );
     }
 
+    public Slice<Member> applySlicePagination(MemberSearchCondition condition, Pageable pageable) {
+        return applySlicePagination(pageable, query -> query
+                .selectFrom(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                )
+        );
+    }
+
     public Page<Member> applyPagination2(MemberSearchCondition condition, Pageable pageable) {
         return applyPagination(pageable, contentQuery -> contentQuery
                 .selectFrom(member)
@@ -82,6 +160,19 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
         );
     }
 
+    public KeysetPage<Member> applyKeysetPagination(MemberSearchCondition condition, String cursor, int size) {
+        return applyKeysetPagination(cursor, size, Keyset.orderBy(member.id, Order.ASC, Member::getId),
+                query -> query
+                        .selectFrom(member)
+                        .leftJoin(member.team, team)
+                        .where(usernameEq(condition.getUsername()),
+                                teamNameEq(condition.getTeamName()),
+                                ageGoe(condition.getAgeGoe()),
+                                ageLoe(condition.getAgeLoe())
+                        )
+        );
+    }
+
 
 
     private BooleanExpression usernameEq(String username) {
@@ -99,8 +190,4 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
     private BooleanExpression ageLoe(Integer ageLoe) {
         return ageLoe != null ? member.age.loe(ageLoe) : null;
     }
-
-    private BooleanExpression ageBetween(MemberSearchCondition condition) {
-        return ageGoe(condition.getAgeGoe()).and(ageLoe(condition.getAgeLoe()));
-    }
 }
@@ -0,0 +1,53 @@
+package study.querydsl.respository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.support.Querydsl4RepositorySupport;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@Repository
+public class TeamRepository extends Querydsl4RepositorySupport {
+
+    public TeamRepository() {
+        super(Team.class);
+    }
+
+    /*
+     *  팀 + 소속 회원 페이징
+     *  selectFrom(team).leftJoin(team.members).fetchJoin() 에 바로 페이징을 적용하면 Hibernate가 전체를 가져와서
+     *  메모리에서 페이징한다. -> 팀 id만 먼저 페이징하고, 해당 팀들의 회원을 한 번에 가져온다.
+     * */
+    public Page<TeamMembersDto> searchTeamsWithMembers(String teamName, Pageable pageable) {
+        Page<Team> teams = applyTwoPhasePagination(pageable, team.id,
+                query -> query
+                        .from(team)
+                        .where(teamNameContains(teamName)),
+                query -> query
+                        .selectFrom(team)
+                        .leftJoin(team.members, member).fetchJoin());
+
+        return teams.map(TeamRepository::toTeamMembersDto);
+    }
+
+    private static TeamMembersDto toTeamMembersDto(Team team) {
+        List<MemberDto> members = team.getMembers().stream()
+                .map(member -> new MemberDto(member.getUsername(), member.getAge()))
+                .collect(Collectors.toList());
+        return new TeamMembersDto(team.getId(), team.getName(), members);
+    }
+
+    private BooleanExpression teamNameContains(String teamName) {
+        return StringUtils.hasText(teamName) ? team.name.contains(teamName) : null;
+    }
+}
@@ -0,0 +1,121 @@
+package study.querydsl.respository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/*
+ *  조회를 별도의 executor에서 실행하고 CompletableFuture로 결과를 돌려준다.
+ *  -> 요청 스레드는 DB 응답을 기다리는 동안 반납된다. (MemberController의 비동기 응답)
+ *
+ *  - 작업마다 새 readOnly 트랜잭션 -> 작업 스레드에 바인딩된 EntityManager와 커넥션을 사용한다.
+ *  - 동시에 실행되는 조회는 threads 개, 대기는 queue-capacity 개까지 -> 넘으면 RejectedExecutionException
+ *  - virtual-threads=true 이고 JVM이 지원하면(Java 21+) 작업마다 가상 스레드를 사용한다.
+ *    가상 스레드는 개수 제한이 없기 때문에 threads 개의 permit으로 커넥션 풀보다 많이 실행되지 않게 막는다.
+ * */
+@Slf4j
+@Component
+public class AsyncQueryExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+    private final ReadYourWrites readYourWrites;
+    private final StatementCounter statementCounter;
+    private final ExecutorService executor;
+    private final Semaphore admission;
+    private final Semaphore running;
+
+    public AsyncQueryExecutor(PlatformTransactionManager transactionManager,
+                              ReadYourWrites readYourWrites,
+                              StatementCounter statementCounter,
+                              @Value("${querydsl.async.threads:10}") int threads,
+                              @Value("${querydsl.async.queue-capacity:100}") int queueCapacity,
+                              @Value("${querydsl.async.virtual-threads:true}") boolean virtualThreads) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.readYourWrites = readYourWrites;
+        this.statementCounter = statementCounter;
+        this.admission = new Semaphore(threads + queueCapacity);
+
+        ExecutorService virtualThreadExecutor = virtualThreads ? virtualThreadExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            log.info("Async queries run on virtual threads (max {} concurrent)", threads);
+            this.executor = virtualThreadExecutor;
+            this.running = new Semaphore(threads);
+        } else {
+            this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("async-query-"));
+            this.running = null;
+        }
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> query) {
+        if (!admission.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many pending async queries"));
+        }
+
+        Supplier<T> task = statementCounter.propagate(readYourWrites.propagate(query));
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(task, future));
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // permit을 먼저 반납하고 future를 완료한다. -> 결과를 받은 호출자가 바로 다음 작업을 넣어도 자리가 비어 있다.
+    private <T> void run(Supplier<T> task, CompletableFuture<T> future) {
+        T result = null;
+        Throwable error = null;
+        try {
+            if (running != null) {
+                running.acquire();
+            }
+            try {
+                result = transactionTemplate.execute(status -> task.get());
+            } finally {
+                if (running != null) {
+                    running.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            admission.release();
+        }
+
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(result);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() 는 Java 21부터 있기 때문에 리플렉션으로 찾는다.
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+package study.querydsl.respository.support;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/*
+ *  ChunkedBulkExecutor 실행 옵션
+ *  ex) BulkChunkOptions.of(10_000).throttle(Duration.ofMillis(100)).onProgress(progress -> ...)
+ * */
+public class BulkChunkOptions {
+
+    private final long chunkSize;
+    private final Duration throttle;
+    private final Consumer<BulkProgress> progressListener;
+
+    private BulkChunkOptions(long chunkSize, Duration throttle, Consumer<BulkProgress> progressListener) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+        this.chunkSize = chunkSize;
+        this.throttle = throttle;
+        this.progressListener = progressListener;
+    }
+
+    public static BulkChunkOptions of(long chunkSize) {
+        return new BulkChunkOptions(chunkSize, Duration.ZERO, progress -> { });
+    }
+
+    // 청크 사이에 쉬는 시간 -> 다른 트랜잭션이 락을 얻을 수 있도록 양보한다.
+    public BulkChunkOptions throttle(Duration throttle) {
+        return new BulkChunkOptions(chunkSize, throttle, progressListener);
+    }
+
+    // 청크가 커밋될 때마다 호출된다.
+    public BulkChunkOptions onProgress(Consumer<BulkProgress> progressListener) {
+        return new BulkChunkOptions(chunkSize, throttle, progressListener);
+    }
+
+    long getChunkSize() {
+        return chunkSize;
+    }
+
+    Duration getThrottle() {
+        return throttle;
+    }
+
+    Consumer<BulkProgress> getProgressListener() {
+        return progressListener;
+    }
+}
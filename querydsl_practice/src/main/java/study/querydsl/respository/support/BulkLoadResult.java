@@ -0,0 +1,28 @@
+package study.querydsl.respository.support;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+@Getter
+public class BulkLoadResult {
+
+    private final long rows;
+    private final long elapsedMillis;
+    private final long rowsPerSecond;
+
+    BulkLoadResult(long rows, long elapsedNanos) {
+        this.rows = rows;
+        this.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        this.rowsPerSecond = rowsPerSecond(rows, elapsedNanos);
+    }
+
+    static long rowsPerSecond(long rows, long elapsedNanos) {
+        return elapsedNanos > 0 ? rows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos : rows;
+    }
+
+    @Override
+    public String toString() {
+        return rows + " rows in " + elapsedMillis + "ms (" + rowsPerSecond + " rows/sec)";
+    }
+}
@@ -0,0 +1,115 @@
+package study.querydsl.respository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+/*
+ *  대량의 엔티티를 JDBC 배치 insert로 저장한다.
+ *  - batch-size 개마다 flush / clear -> 영속성 컨텍스트가 커지지 않고, insert가 batch-size 개씩 한 번에 전송된다.
+ *  - commit-size 개마다 커밋 -> 중간에 실패해도 앞에서 커밋된 데이터는 남는다.
+ *    바깥 트랜잭션에 참여하면 청크가 전부 그 트랜잭션으로 합쳐지기 때문에 트랜잭션 안에서는 호출할 수 없다.
+ *  - 저장하는 엔티티는 2차 캐시에 넣지 않는다.
+ *
+ *  JDBC 배치가 동작하려면 엔티티 id가 IDENTITY가 아니어야 한다. (Member, Team은 pooled 시퀀스)
+ *  연관관계는 setter로 참조만 걸어야 한다. -> 양방향 편의 메서드를 사용하면 반대편 컬렉션에 계속 쌓인다.
+ * */
+@Slf4j
+@Component
+public class BulkLoader {
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int commitSize;
+
+    public BulkLoader(EntityManager em,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${querydsl.bulk-load.batch-size:1000}") int batchSize,
+                      @Value("${querydsl.bulk-load.commit-size:100000}") int commitSize) {
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.commitSize = Math.max(commitSize, batchSize);
+    }
+
+    /*
+     *  한 트랜잭션으로 저장하고, 저장된(= id가 채워진) 엔티티를 반환한다.
+     *  ex) 회원을 넣기 전에 팀을 먼저 저장할 때 사용한다.
+     * */
+    public <T> List<T> persistAll(List<T> entities) {
+        load(entities.iterator());
+        return entities;
+    }
+
+    public <T> BulkLoadResult load(Iterator<T> entities) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("BulkLoader commits every commit-size rows and cannot run inside an active transaction");
+        }
+
+        long startedAt = System.nanoTime();
+        long rows = 0;
+
+        while (entities.hasNext()) {
+            rows += transactionTemplate.execute(status -> persistChunk(entities));
+            log.info("Bulk loaded {} rows ({} rows/sec)", rows,
+                    BulkLoadResult.rowsPerSecond(rows, System.nanoTime() - startedAt));
+        }
+
+        BulkLoadResult result = new BulkLoadResult(rows, System.nanoTime() - startedAt);
+        log.info("Bulk load finished: {}", result);
+        return result;
+    }
+
+    private <T> long persistChunk(Iterator<T> entities) {
+        Session session = em.unwrap(Session.class);
+        session.setJdbcBatchSize(batchSize);
+        session.setCacheMode(CacheMode.IGNORE);
+
+        long count = 0;
+        while (count < commitSize && entities.hasNext()) {
+            em.persist(entities.next());
+            count++;
+            if (count % batchSize == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.flush();
+        em.clear();
+        return count;
+    }
+
+    /*
+     *  0 ~ count-1 번째 엔티티를 필요할 때 만들어주는 Iterator -> 수백만 건도 메모리에 한 번에 올리지 않는다.
+     * */
+    public static <T> Iterator<T> generate(long count, LongFunction<T> generator) {
+        return new Iterator<T>() {
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return generator.apply(index++);
+            }
+        };
+    }
+}
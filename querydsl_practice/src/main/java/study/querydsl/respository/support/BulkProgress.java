@@ -0,0 +1,30 @@
+package study.querydsl.respository.support;
+
+import lombok.Getter;
+
+@Getter
+public class BulkProgress {
+
+    private final long chunk;
+    private final long totalChunks;
+    // 이번 청크의 id 범위 [fromId, toId)
+    private final long fromId;
+    private final long toId;
+    private final long affectedRows;
+    private final long totalAffectedRows;
+
+    BulkProgress(long chunk, long totalChunks, long fromId, long toId, long affectedRows, long totalAffectedRows) {
+        this.chunk = chunk;
+        this.totalChunks = totalChunks;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.affectedRows = affectedRows;
+        this.totalAffectedRows = totalAffectedRows;
+    }
+
+    @Override
+    public String toString() {
+        return "chunk " + chunk + "/" + totalChunks + " id [" + fromId + ", " + toId + ") affected "
+                + affectedRows + " (total " + totalAffectedRows + ")";
+    }
+}
@@ -0,0 +1,97 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.FilteredClause;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.dml.DMLClause;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Function;
+
+/*
+ *  벌크 update / delete 를 id 범위로 나눠서 청크마다 별도의 짧은 트랜잭션(REQUIRES_NEW)으로 실행한다.
+ *  -> 테이블 전체에 한 번에 실행할 때처럼 락을 오래 잡지 않는다.
+ *
+ *  청크마다 커밋되기 때문에 중간에 실패하면 앞의 청크는 반영된 상태로 남는다.
+ *  -> 여러 번 실행해도 결과가 같은(멱등) 연산에 사용해야 한다. ex) age = age + 1 은 재실행하면 안 된다.
+ * */
+@Slf4j
+@Component
+public class ChunkedBulkExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+
+    public ChunkedBulkExecutor(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /*
+     *  clause 에는 청크마다 새 update / delete 절을 만들어서 반환하고, id 범위 조건은 여기서 추가한다.
+     *  반환값은 전체 청크에서 변경된 row 수
+     * */
+    public <C extends DMLClause<C> & FilteredClause<C>> long execute(JPAQueryFactory queryFactory,
+                                                                     NumberPath<Long> id,
+                                                                     BulkChunkOptions options,
+                                                                     Function<JPAQueryFactory, C> clause) {
+        // ex) member.id -> member
+        if (!(id.getMetadata().getParent() instanceof EntityPath)) {
+            throw new IllegalArgumentException("Id path must be a property of an entity path!");
+        }
+        EntityPath<?> entity = (EntityPath<?>) id.getMetadata().getParent();
+
+        Tuple range = queryFactory
+                .select(id.min(), id.max())
+                .from(entity)
+                .fetchOne();
+
+        Long minId = range != null ? range.get(id.min()) : null;
+        Long maxId = range != null ? range.get(id.max()) : null;
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+
+        long chunkSize = options.getChunkSize();
+        long totalChunks = (maxId - minId) / chunkSize + 1;
+        long totalAffected = 0;
+
+        for (long chunk = 1; chunk <= totalChunks; chunk++) {
+            long fromId = minId + (chunk - 1) * chunkSize;
+            long toId = fromId + chunkSize;
+
+            Long affected = transactionTemplate.execute(status -> clause.apply(queryFactory)
+                    .where(id.goe(fromId), id.lt(toId))
+                    .execute());
+            totalAffected += affected;
+
+            BulkProgress progress = new BulkProgress(chunk, totalChunks, fromId, toId, affected, totalAffected);
+            log.debug("Bulk {}", progress);
+            options.getProgressListener().accept(progress);
+
+            if (chunk < totalChunks) {
+                pause(options);
+            }
+        }
+
+        log.info("Bulk operation on {} finished: {} rows in {} chunks", entity, totalAffected, totalChunks);
+        return totalAffected;
+    }
+
+    private void pause(BulkChunkOptions options) {
+        if (options.getThrottle().isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(options.getThrottle().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while throttling bulk operation", e);
+        }
+    }
+}
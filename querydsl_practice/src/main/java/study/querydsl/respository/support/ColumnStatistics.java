@@ -0,0 +1,215 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.PathBuilder;
+import com.querydsl.core.types.dsl.Wildcard;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+ *  count 추정에 사용하는 테이블 / 컬럼 통계 (DB 옵티마이저의 통계와 같은 방식)
+ *  - 테이블 : row 수
+ *  - 컬럼   : 서로 다른 값의 수(ndv), 최솟값, 최댓값
+ *  처음 필요할 때 조회하고 ttl 동안 재사용한다. -> 통계 조회 비용은 ttl 마다 한 번만 든다.
+ *  데이터가 변경되어도 바로 버리지 않는다. -> 통계 조회(count(*), count(distinct), min, max)는 전체 테이블을 읽기 때문에
+ *  쓰기가 많을 때 변경마다 다시 조회하면 정확한 count보다 비싸진다. 추정값이니 ttl 만큼 오래된 통계를 허용한다.
+ *
+ *  추정 row 수 = from 절 엔티티의 row 수 * where 절의 선택도
+ *  - a = ?          : 1 / ndv
+ *  - a >= ?, a <= ? : 최솟값 ~ 최댓값 사이에 값이 고르게 분포한다고 가정
+ *  - and / or / not : 조건끼리 독립이라고 가정
+ *  - 나머지          : 기본 선택도
+ * */
+@Component
+public class ColumnStatistics {
+
+    private static final double DEFAULT_SELECTIVITY = 1.0 / 3;
+    private static final double LIKE_SELECTIVITY = 0.1;
+
+    private final EntityManager em;
+    private final long ttlNanos;
+    private final Map<Class<?>, Entry<Long>> rowCounts = new ConcurrentHashMap<>();
+    private final Map<String, Entry<Column>> columns = new ConcurrentHashMap<>();
+
+    public ColumnStatistics(EntityManager em,
+                            @Value("${querydsl.count.statistics-ttl:10m}") Duration ttl) {
+        this.em = em;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public long estimate(JPAQuery<?> query) {
+        QueryMetadata metadata = query.getMetadata();
+        List<JoinExpression> joins = metadata.getJoins();
+        EntityPath<?> root = (EntityPath<?>) joins.get(0).getTarget();
+
+        double rows = rowCount(root);
+        return Math.round(rows * selectivity(metadata.getWhere(), metadata.getParams()));
+    }
+
+    private long rowCount(EntityPath<?> root) {
+        return load(rowCounts, root.getType(), () -> {
+            Long count = new JPAQuery<>(em).select(Wildcard.count).from(root).fetchOne();
+            return count != null ? count : 0L;
+        });
+    }
+
+    private Column column(Path<?> path) {
+        Path<?> root = path.getRoot();
+        String key = root.getType().getName() + path.toString().substring(root.toString().length());
+
+        return load(columns, key, () -> {
+            Tuple tuple = new JPAQuery<>(em)
+                    .select(ExpressionUtils.operation(Long.class, Ops.AggOps.COUNT_DISTINCT_AGG, path),
+                            ExpressionUtils.operation(path.getType(), Ops.AggOps.MIN_AGG, path),
+                            ExpressionUtils.operation(path.getType(), Ops.AggOps.MAX_AGG, path))
+                    .from(new PathBuilder<>(root.getType(), root.getMetadata().getName()))
+                    .fetchOne();
+            return new Column(tuple.get(0, Long.class), tuple.get(1, Object.class), tuple.get(2, Object.class));
+        });
+    }
+
+    private <K, V> V load(Map<K, Entry<V>> cache, K key, Supplier<V> loader) {
+        long now = System.nanoTime();
+        Entry<V> entry = cache.get(key);
+        if (entry == null || now - entry.loadedAt >= ttlNanos) {
+            entry = new Entry<>(loader.get(), now);
+            cache.put(key, entry);
+        }
+        return entry.value;
+    }
+
+    private double selectivity(Predicate where, Map<ParamExpression<?>, Object> params) {
+        if (where == null) {
+            return 1.0;
+        }
+        return clamp(selectivity((Expression<?>) where, params));
+    }
+
+    private double selectivity(Expression<?> expression, Map<ParamExpression<?>, Object> params) {
+        if (!(expression instanceof Operation)) {
+            return DEFAULT_SELECTIVITY;
+        }
+
+        Operation<?> operation = (Operation<?>) expression;
+        Operator operator = operation.getOperator();
+
+        if (operator == Ops.AND) {
+            return selectivity(operation.getArg(0), params) * selectivity(operation.getArg(1), params);
+        }
+        if (operator == Ops.OR) {
+            double left = selectivity(operation.getArg(0), params);
+            double right = selectivity(operation.getArg(1), params);
+            return left + right - left * right;
+        }
+        if (operator == Ops.NOT) {
+            return 1.0 - selectivity(operation.getArg(0), params);
+        }
+        if (operation.getArgs().isEmpty() || !(operation.getArg(0) instanceof Path)) {
+            return DEFAULT_SELECTIVITY;
+        }
+
+        Column column = column((Path<?>) operation.getArg(0));
+        if (column.ndv == 0) {
+            return 0.0;
+        }
+
+        if (operator == Ops.EQ) {
+            return 1.0 / column.ndv;
+        }
+        if (operator == Ops.NE) {
+            return 1.0 - 1.0 / column.ndv;
+        }
+        if (operator == Ops.IN) {
+            Object values = value(operation.getArg(1), params);
+            return values instanceof Collection ? ((Collection<?>) values).size() / (double) column.ndv : DEFAULT_SELECTIVITY;
+        }
+        if (operator == Ops.GOE || operator == Ops.GT) {
+            return column.fraction(value(operation.getArg(1), params), column.max);
+        }
+        if (operator == Ops.LOE || operator == Ops.LT) {
+            return column.fraction(column.min, value(operation.getArg(1), params));
+        }
+        if (operator == Ops.BETWEEN) {
+            return column.fraction(value(operation.getArg(1), params), value(operation.getArg(2), params));
+        }
+        if (operator == Ops.LIKE || operator == Ops.STRING_CONTAINS || operator == Ops.STARTS_WITH
+                || operator == Ops.ENDS_WITH || operator == Ops.LIKE_IC || operator == Ops.STRING_CONTAINS_IC) {
+            return LIKE_SELECTIVITY;
+        }
+        return DEFAULT_SELECTIVITY;
+    }
+
+    private static Object value(Expression<?> expression, Map<ParamExpression<?>, Object> params) {
+        if (expression instanceof Constant) {
+            return ((Constant<?>) expression).getConstant();
+        }
+        if (expression instanceof ParamExpression) {
+            return params.get(expression);
+        }
+        return null;
+    }
+
+    private static double clamp(double selectivity) {
+        return Math.max(0.0, Math.min(1.0, selectivity));
+    }
+
+    private static class Column {
+        private final long ndv;
+        private final Object min;
+        private final Object max;
+
+        private Column(Long ndv, Object min, Object max) {
+            this.ndv = ndv != null ? ndv : 0L;
+            this.min = min;
+            this.max = max;
+        }
+
+        // from ~ to 범위에 들어가는 비율. 숫자 컬럼이 아니면 범위를 계산할 수 없어서 기본 선택도를 사용한다.
+        private double fraction(Object from, Object to) {
+            if (!(from instanceof Number) || !(to instanceof Number)
+                    || !(min instanceof Number) || !(max instanceof Number)) {
+                return DEFAULT_SELECTIVITY;
+            }
+            double low = ((Number) min).doubleValue();
+            double high = ((Number) max).doubleValue();
+            double start = Math.max(low, ((Number) from).doubleValue());
+            double end = Math.min(high, ((Number) to).doubleValue());
+            if (end < start) {
+                return 0.0;
+            }
+            // 모든 값이 같으면 (min == max) 그 값이 범위에 들어가는지만 본다.
+            return high > low ? clamp((end - start) / (high - low)) : 1.0;
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+ *  페이징 count 쿼리를 어떻게 셀지 정한다. (querydsl.count.policy)
+ *  - exact  : 항상 정확하게 센다.
+ *  - capped : cap 개까지만 정확하게 세고, cap을 넘으면 ColumnStatistics로 추정한다.
+ *             -> 조건이 없는 검색처럼 결과가 아주 많은 경우에도 cap + 1 개만 읽는다.
+ *
+ *  추정값은 항상 cap보다 크기 때문에 total <= cap 이면 정확한 값이다.
+ * */
+@Component
+public class CountPolicy {
+
+    public enum Mode {
+        EXACT, CAPPED
+    }
+
+    private final ColumnStatistics columnStatistics;
+    private final Mode mode;
+    private final long cap;
+
+    public CountPolicy(ColumnStatistics columnStatistics,
+                       @Value("${querydsl.count.policy:exact}") Mode mode,
+                       @Value("${querydsl.count.cap:10000}") long cap) {
+        this.columnStatistics = columnStatistics;
+        this.mode = mode;
+        this.cap = cap;
+    }
+
+    public long count(JPAQuery<Long> countQuery) {
+        if (mode == Mode.EXACT) {
+            return CountQueryGenerator.count(countQuery);
+        }
+
+        long capped = CountQueryGenerator.cappedCount(countQuery, cap);
+        if (capped <= cap) {
+            return capped;
+        }
+        return Math.max(cap + 1, columnStatistics.estimate(countQuery));
+    }
+
+    public boolean isExact(long total) {
+        return mode == Mode.EXACT || total <= cap;
+    }
+}
@@ -0,0 +1,229 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ *  페이징 count 쿼리 결과 캐시
+ *  key는 count 쿼리의 JPQL + 바인딩 값이다 -> 검색 조건 중 비어있는 값은 where 절에서 이미 빠지기 때문에
+ *  같은 검색 조건이면 같은 key가 만들어진다.
+ *  TTL이 지나거나, 크기를 넘어서 가장 오래 사용하지 않은 항목이 밀려나거나, count 쿼리가 읽는 테이블이 변경되면 사라진다.
+ *  -> count 쿼리의 from / join / 서브쿼리 엔티티를 Hibernate query space(테이블)로 바꿔서 항목마다 기억해둔다.
+ * */
+@Component
+public class CountQueryCache {
+
+    private final DataChangeTracker dataChangeTracker;
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Map<String, CachedCount> entries;
+
+    // 데이터가 변경될 때마다 증가한다 -> 조회 중에 읽는 테이블이 변경된 count 결과는 저장하지 않는다.
+    private final AtomicLong changes = new AtomicLong();
+    private final Map<String, Long> tableChangedAt = new ConcurrentHashMap<>();
+    private volatile long allChangedAt;
+    private final Map<Class<?>, Set<String>> entityTables = new ConcurrentHashMap<>();
+
+    public CountQueryCache(DataChangeTracker dataChangeTracker,
+                           EntityManagerFactory emf,
+                           @Value("${querydsl.count-cache.enabled:true}") boolean enabled,
+                           @Value("${querydsl.count-cache.ttl:30s}") Duration ttl,
+                           @Value("${querydsl.count-cache.max-size:1000}") int maxSize) {
+        this.dataChangeTracker = dataChangeTracker;
+        this.emf = emf;
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, CachedCount>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+                return size() > CountQueryCache.this.maxSize;
+            }
+        };
+        dataChangeTracker.addListener(this::invalidate);
+    }
+
+    /*
+     *  PageableExecutionUtils.getPage에 그대로 넘길 수 있는 LongSupplier를 반환한다.
+     *  count가 필요 없는 페이지에서는 호출되지 않기 때문에 캐시 조회도 일어나지 않는다.
+     * */
+    public LongSupplier cached(JPAQuery<?> countQuery, LongSupplier loader) {
+        if (!enabled) {
+            return loader;
+        }
+        return () -> get(countQuery, loader);
+    }
+
+    public boolean contains(JPAQuery<?> countQuery) {
+        if (!enabled || dataChangeTracker.hasPendingChanges()) {
+            return false;
+        }
+        String key = key(countQuery);
+        synchronized (entries) {
+            CachedCount entry = entries.get(key);
+            return entry != null && System.nanoTime() - entry.loadedAt < ttlNanos;
+        }
+    }
+
+    public void invalidateAll() {
+        allChangedAt = changes.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    // table을 읽는 count만 지운다. -> 다른 테이블의 변경은 캐시된 count에 영향이 없다.
+    public void invalidate(String table) {
+        tableChangedAt.put(table, changes.incrementAndGet());
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.dependsOn(table));
+        }
+    }
+
+    /*
+     *  커밋 전의 변경이 있는 트랜잭션은 캐시를 읽지도 쓰지도 않는다.
+     *  -> 읽으면 자신이 flush한 변경이 빠진 count를, 쓰면 다른 트랜잭션에 커밋되지 않은 count를 보여주게 된다.
+     * */
+    private long get(JPAQuery<?> countQuery, LongSupplier loader) {
+        if (dataChangeTracker.hasPendingChanges()) {
+            return loader.getAsLong();
+        }
+
+        String key = key(countQuery);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            CachedCount entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.loadedAt < ttlNanos) {
+                    return entry.count;
+                }
+                entries.remove(key);
+            }
+        }
+
+        long loadedAt = changes.get();
+        long count = loader.getAsLong();
+
+        // count 쿼리 직전에 flush 된 변경(auto flush)이 반영되었을 수 있다.
+        if (dataChangeTracker.hasPendingChanges()) {
+            return count;
+        }
+
+        Set<String> tables = tables(countQuery);
+        synchronized (entries) {
+            if (!changedSince(tables, loadedAt)) {
+                entries.put(key, new CachedCount(count, now, tables));
+            }
+        }
+        return count;
+    }
+
+    private boolean changedSince(Set<String> tables, long since) {
+        if (allChangedAt > since) {
+            return true;
+        }
+        if (tables == null) {
+            return changes.get() > since;
+        }
+        for (String table : tables) {
+            if (tableChangedAt.getOrDefault(table, 0L) > since) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 엔티티가 아닌 대상이 있으면 null -> 어떤 테이블이 변경되어도 지운다.
+    private Set<String> tables(JPAQuery<?> countQuery) {
+        Set<Class<?>> types = new HashSet<>();
+        collectEntityTypes(countQuery.getMetadata(), types);
+
+        Set<String> tables = new HashSet<>();
+        for (Class<?> type : types) {
+            Set<String> entityTable = entityTables.computeIfAbsent(type, this::querySpaces);
+            if (entityTable.isEmpty()) {
+                return null;
+            }
+            tables.addAll(entityTable);
+        }
+        return tables;
+    }
+
+    private static void collectEntityTypes(QueryMetadata metadata, Set<Class<?>> types) {
+        for (JoinExpression join : metadata.getJoins()) {
+            types.add(join.getTarget().getType());
+            collectSubQueryTypes(join.getCondition(), types);
+        }
+        collectSubQueryTypes(metadata.getWhere(), types);
+    }
+
+    private static void collectSubQueryTypes(Expression<?> expression, Set<Class<?>> types) {
+        if (expression instanceof SubQueryExpression) {
+            collectEntityTypes(((SubQueryExpression<?>) expression).getMetadata(), types);
+        } else if (expression instanceof Operation) {
+            for (Expression<?> arg : ((Operation<?>) expression).getArgs()) {
+                collectSubQueryTypes(arg, types);
+            }
+        }
+    }
+
+    // DataChangeStatementInspector와 같은 소문자 테이블 이름 (상속 매핑이면 여러 테이블)
+    private Set<String> querySpaces(Class<?> type) {
+        Set<String> tables = new HashSet<>();
+        try {
+            EntityPersister persister = emf.unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(type);
+            for (Serializable space : persister.getQuerySpaces()) {
+                tables.add(space.toString().toLowerCase(Locale.ROOT));
+            }
+        } catch (RuntimeException e) {
+            tables.clear();
+        }
+        return tables;
+    }
+
+    private static String key(JPAQuery<?> countQuery) {
+        JPQLSerializer serializer = new JPQLSerializer(JPQLTemplates.DEFAULT);
+        serializer.serialize(countQuery.getMetadata(), true, null);
+        return serializer + " " + serializer.getConstants() + " " + countQuery.getMetadata().getParams();
+    }
+
+    private static class CachedCount {
+        private final long count;
+        private final long loadedAt;
+        private final Set<String> tables;
+
+        private CachedCount(long count, long loadedAt, Set<String> tables) {
+            this.count = count;
+            this.loadedAt = loadedAt;
+            this.tables = tables;
+        }
+
+        private boolean dependsOn(String table) {
+            return tables == null || tables.contains(table);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.DefaultQueryMetadata;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.MapExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Wildcard;
+import com.querydsl.jpa.JPAQueryMixin;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import javax.persistence.EntityManager;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ *  content 쿼리로부터 count 쿼리를 만들어준다.
+ *  1. select 절은 count(*)로 바꾸고, order by / limit / offset 은 버린다.
+ *  2. fetch join은 일반 join으로 바꾼다. (count 쿼리에서 fetch join을 사용하면 예외가 발생한다)
+ *  3. where 절 등에서 사용되지 않는 to-one left join은 row 수에 영향을 주지 않기 때문에 제거한다.
+ *
+ *  group by / having 이 있는 쿼리는 JPQL 만으로 그룹 수를 셀 수 없기 때문에 count 쿼리를 직접 작성해야 한다.
+ * */
+public final class CountQueryGenerator {
+
+    // 파라미터가 아닌 리터럴로 만들어야 select 절에 사용할 수 있다.
+    private static final Expression<Integer> ROW = Expressions.numberTemplate(Integer.class, "1");
+
+    private CountQueryGenerator() {
+    }
+
+    public static JPAQuery<Long> generate(EntityManager entityManager, JPAQuery<?> contentQuery) {
+        QueryMetadata source = contentQuery.getMetadata();
+        if (!source.getGroupBy().isEmpty() || source.getHaving() != null) {
+            throw new IllegalArgumentException("Count query for a group by query must be written explicitly!");
+        }
+
+        // getJoins()는 호출할 때마다 마지막 join을 새로 만들어서 반환하기 때문에 한 번만 가져온다.
+        List<JoinExpression> joins = source.getJoins();
+        QueryMetadata metadata = new DefaultQueryMetadata();
+        // distinct 쿼리는 select 절을 count(distinct ...)로 세기 때문에 select 절이 참조하는 join도 남긴다.
+        Expression<?> counted = source.isDistinct() ? source.getProjection() : null;
+
+        for (int i = 0; i < joins.size(); i++) {
+            JoinExpression join = joins.get(i);
+            if (isRemovable(join, referencedPaths(joins, i, source.getWhere(), counted))) {
+                continue;
+            }
+            metadata.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                metadata.addJoinCondition(join.getCondition());
+            }
+            for (JoinFlag flag : join.getFlags()) {
+                if (!flag.equals(JPAQueryMixin.FETCH) && !flag.equals(JPAQueryMixin.FETCH_ALL_PROPERTIES)) {
+                    metadata.addJoinFlag(flag);
+                }
+            }
+        }
+
+        if (source.getWhere() != null) {
+            metadata.addWhere(source.getWhere());
+        }
+        for (Map.Entry<ParamExpression<?>, Object> param : source.getParams().entrySet()) {
+            setParam(metadata, param.getKey(), param.getValue());
+        }
+
+        // content 쿼리가 메트릭을 기록하고 있으면 count 쿼리도 같은 메트릭으로 기록한다.
+        JPAQuery<?> countQuery = contentQuery instanceof MeteredJPAQuery
+                ? ((MeteredJPAQuery<?>) contentQuery).newQuery(entityManager, metadata)
+                : new JPAQuery<>(entityManager, metadata);
+        return countQuery.select(countExpression(source));
+    }
+
+    // 결과가 없으면 null 이 될 수 있는 fetchOne 대신 사용한다.
+    public static long count(JPAQuery<Long> countQuery) {
+        Long count = countQuery.fetchOne();
+        return count != null ? count : 0L;
+    }
+
+    /*
+     *  최대 cap + 1 개의 row만 읽어서 센다. -> cap을 넘는지만 알면 되는 경우 조건에 맞는 row를 전부 읽지 않는다.
+     *  JPQL은 from 절 서브쿼리(select count(*) from (... limit n))를 지원하지 않기 때문에
+     *  count 대신 상수(또는 distinct 대상)를 limit 으로 조회해서 개수를 센다.
+     * */
+    public static long cappedCount(JPAQuery<Long> countQuery, long cap) {
+        Expression<?> count = countQuery.getMetadata().getProjection();
+        JPAQuery<Long> query = countQuery.clone();
+
+        List<?> rows;
+        if (count instanceof Operation && ((Operation<?>) count).getOperator() == Ops.AggOps.COUNT_DISTINCT_AGG) {
+            rows = query.select(((Operation<?>) count).getArg(0)).distinct().limit(cap + 1).fetch();
+        } else {
+            rows = query.select(ROW).limit(cap + 1).fetch();
+        }
+        return rows.size();
+    }
+
+    private static Expression<Long> countExpression(QueryMetadata source) {
+        if (!source.isDistinct()) {
+            return Wildcard.count;
+        }
+
+        Expression<?> projection = source.getProjection();
+        if (projection == null || projection instanceof FactoryExpression) {
+            throw new IllegalArgumentException("Count query for a multi column distinct query must be written explicitly!");
+        }
+        return ExpressionUtils.operation(Long.class, Ops.AggOps.COUNT_DISTINCT_AGG, projection);
+    }
+
+    /*
+     *  left join 이면서 대상이 컬렉션이 아닌 연관관계(to-one)이고,
+     *  다른 곳에서 별칭을 참조하지 않는 join 만 제거할 수 있다.
+     * */
+    private static boolean isRemovable(JoinExpression join, Set<Expression<?>> referencedPaths) {
+        if (join.getType() != JoinType.LEFTJOIN) {
+            return false;
+        }
+
+        Expression<?> association = join.getTarget();
+        Expression<?> alias = join.getTarget();
+        if (association instanceof Operation && ((Operation<?>) association).getOperator() == Ops.ALIAS) {
+            alias = ((Operation<?>) association).getArg(1);
+            association = ((Operation<?>) association).getArg(0);
+        }
+
+        boolean toOne = association instanceof EntityPath
+                && ((Path<?>) association).getMetadata().getParent() != null
+                && !(association instanceof CollectionExpression)
+                && !(association instanceof MapExpression);
+
+        return toOne && !referencedPaths.contains(alias);
+    }
+
+    // 대상 join 자신을 제외하고 쿼리의 나머지 부분(count 쿼리에 남는 부분)에서 참조하는 모든 경로
+    private static Set<Expression<?>> referencedPaths(List<JoinExpression> joins, int exclude, Predicate where,
+                                                      Expression<?> counted) {
+        Set<Expression<?>> paths = new HashSet<>();
+
+        for (int i = 0; i < joins.size(); i++) {
+            if (i == exclude) {
+                continue;
+            }
+            JoinExpression join = joins.get(i);
+            join.getTarget().accept(PathCollector.INSTANCE, paths);
+            if (join.getCondition() != null) {
+                join.getCondition().accept(PathCollector.INSTANCE, paths);
+            }
+        }
+        if (where != null) {
+            where.accept(PathCollector.INSTANCE, paths);
+        }
+        if (counted != null) {
+            counted.accept(PathCollector.INSTANCE, paths);
+        }
+
+        return paths;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void setParam(QueryMetadata metadata, ParamExpression<T> param, Object value) {
+        metadata.setParam(param, (T) value);
+    }
+
+    /*
+     *  식 안에 등장하는 경로와 그 상위 경로를 모두 모은다.
+     *  ex) team.name -> team.name, team
+     * */
+    private static class PathCollector implements Visitor<Void, Set<Expression<?>>> {
+
+        private static final PathCollector INSTANCE = new PathCollector();
+
+        @Override
+        public Void visit(Constant<?> expr, Set<Expression<?>> paths) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<Expression<?>> paths) {
+            for (Expression<?> arg : expr.getArgs()) {
+                arg.accept(this, paths);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<Expression<?>> paths) {
+            for (Expression<?> arg : expr.getArgs()) {
+                arg.accept(this, paths);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<Expression<?>> paths) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Path<?> expr, Set<Expression<?>> paths) {
+            Path<?> path = expr;
+            while (path != null && paths.add(path)) {
+                path = path.getMetadata().getParent();
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<Expression<?>> paths) {
+            QueryMetadata metadata = expr.getMetadata();
+            for (JoinExpression join : metadata.getJoins()) {
+                join.getTarget().accept(this, paths);
+                if (join.getCondition() != null) {
+                    join.getCondition().accept(this, paths);
+                }
+            }
+            if (metadata.getProjection() != null) {
+                metadata.getProjection().accept(this, paths);
+            }
+            if (metadata.getWhere() != null) {
+                metadata.getWhere().accept(this, paths);
+            }
+            for (Expression<?> groupBy : metadata.getGroupBy()) {
+                groupBy.accept(this, paths);
+            }
+            if (metadata.getHaving() != null) {
+                metadata.getHaving().accept(this, paths);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<Expression<?>> paths) {
+            for (Object arg : expr.getArgs()) {
+                if (arg instanceof Expression) {
+                    ((Expression<?>) arg).accept(this, paths);
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package study.querydsl.respository.support;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ *  totalElements가 정확한 값인지, 통계로 추정한 값인지 함께 알려주는 Page
+ *  -> 응답 JSON에 totalExact 로 내려간다. (false면 "약 N건" 처럼 보여준다)
+ * */
+public class CountedPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean totalExact;
+
+    public CountedPage(List<T> content, Pageable pageable, long total, boolean totalExact) {
+        super(content, pageable, total);
+        this.totalExact = totalExact;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+
+    @Override
+    public <U> CountedPage<U> map(Function<? super T, ? extends U> converter) {
+        return new CountedPage<>(getConvertedContent(converter), getPageable(), getTotalElements(), totalExact);
+    }
+}
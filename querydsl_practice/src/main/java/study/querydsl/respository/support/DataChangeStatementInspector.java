@@ -0,0 +1,83 @@
+package study.querydsl.respository.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.Locale;
+
+/*
+ *  Hibernate가 실행하는 모든 SQL을 가로채서 DML 대상 테이블을 DataChangeTracker에 알려준다.
+ *  SQL은 변경하지 않고 그대로 반환한다.
+ * */
+public class DataChangeStatementInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DataChangeTracker dataChangeTracker;
+
+    public DataChangeStatementInspector(DataChangeTracker dataChangeTracker) {
+        this.dataChangeTracker = dataChangeTracker;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        String table = changedTable(sql);
+        if (table != null) {
+            dataChangeTracker.tableChanged(table);
+        }
+        return sql;
+    }
+
+    static String changedTable(String sql) {
+        int start = skipComment(sql, skipWhitespace(sql, 0));
+
+        if (startsWithKeyword(sql, start, "insert")) {
+            return tableAfter(sql, start + "insert".length(), "into");
+        }
+        if (startsWithKeyword(sql, start, "update")) {
+            return tableName(sql, skipWhitespace(sql, start + "update".length()));
+        }
+        if (startsWithKeyword(sql, start, "delete")) {
+            return tableAfter(sql, start + "delete".length(), "from");
+        }
+        return null;
+    }
+
+    private static String tableAfter(String sql, int from, String keyword) {
+        int start = skipWhitespace(sql, from);
+        if (startsWithKeyword(sql, start, keyword)) {
+            start = skipWhitespace(sql, start + keyword.length());
+        }
+        return tableName(sql, start);
+    }
+
+    private static String tableName(String sql, int start) {
+        int end = start;
+        while (end < sql.length() && !Character.isWhitespace(sql.charAt(end)) && sql.charAt(end) != '(') {
+            end++;
+        }
+        return end > start ? sql.substring(start, end).toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static boolean startsWithKeyword(String sql, int start, String keyword) {
+        int end = start + keyword.length();
+        return sql.regionMatches(true, start, keyword, 0, keyword.length())
+                && (end == sql.length() || Character.isWhitespace(sql.charAt(end)));
+    }
+
+    // use_sql_comments 옵션을 켜면 SQL 앞에 /* ... */ 주석이 붙는다.
+    private static int skipComment(String sql, int start) {
+        if (sql.startsWith("/*", start)) {
+            int end = sql.indexOf("*/", start);
+            return end < 0 ? start : skipWhitespace(sql, end + 2);
+        }
+        return start;
+    }
+
+    private static int skipWhitespace(String sql, int start) {
+        int index = start;
+        while (index < sql.length() && Character.isWhitespace(sql.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,76 @@
+package study.querydsl.respository.support;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ *  insert / update / delete 문이 실행된 테이블을 리스너들에게 알려준다.
+ *  엔티티 flush 뿐만 아니라 JPAQueryFactory 벌크 연산도 SQL 단에서 잡히기 때문에 함께 감지된다.
+ *  트랜잭션 안에서 변경된 경우에는 커밋/롤백 이후에 한 번 더 알려준다.
+ *  -> 다른 트랜잭션이 커밋 전의 값을 다시 캐시에 올려두는 경우를 막기 위함
+ * */
+@Component
+public class DataChangeTracker {
+
+    private final List<DataChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<DataChangeListener> statementListeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(DataChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // SQL이 실행되는 시점(실행한 스레드)에만 알려준다. -> 커밋/롤백 이후에는 다시 알려주지 않는다.
+    public void addStatementListener(DataChangeListener listener) {
+        statementListeners.add(listener);
+    }
+
+    public void tableChanged(String table) {
+        for (DataChangeListener listener : statementListeners) {
+            listener.onChange(table);
+        }
+        publish(table);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<String> changedTables = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (changedTables == null) {
+            Set<String> tables = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, tables);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(DataChangeTracker.this);
+                    tables.forEach(DataChangeTracker.this::publish);
+                }
+            });
+            changedTables = tables;
+        }
+        changedTables.add(table);
+    }
+
+    // 현재 트랜잭션에서 아직 커밋되지 않은 변경이 있는지 확인한다.
+    public boolean hasPendingChanges() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.hasResource(this);
+    }
+
+    private void publish(String table) {
+        for (DataChangeListener listener : listeners) {
+            listener.onChange(table);
+        }
+    }
+
+    @FunctionalInterface
+    public interface DataChangeListener {
+        void onChange(String table);
+    }
+}
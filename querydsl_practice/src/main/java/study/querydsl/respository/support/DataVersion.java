@@ -0,0 +1,62 @@
+package study.querydsl.respository.support;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ *  테이블마다 데이터 버전을 관리한다. -> 조회 결과의 ETag를 만들 때 사용한다. (MemberController)
+ *
+ *  insert / update / delete 가 실행될 때, 그리고 그 트랜잭션이 커밋/롤백된 이후에 한 번 더 증가한다. (DataChangeTracker)
+ *  -> 엔티티 변경과 JPAQueryFactory 벌크 연산 모두 잡힌다.
+ *  -> 커밋 전에 조회해서 받은 ETag는 커밋 이후에는 맞지 않게 된다.
+ *
+ *  조회 전에 읽은 버전으로 ETag를 만들기 때문에 조회 도중에 바뀐 데이터는 다음 요청에서 다시 내려간다. (304로 잘못 응답하지 않는다.)
+ *  버전은 서버마다 따로 증가한다. -> 서버가 시작될 때 만든 epoch를 ETag에 넣어서 다른 서버(재시작 포함)의 ETag와 섞이지 않게 한다.
+ * */
+@Component
+public class DataVersion {
+
+    private final long epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    public DataVersion(DataChangeTracker dataChangeTracker) {
+        dataChangeTracker.addListener(this::changed);
+    }
+
+    // 테이블 버전의 합 -> 테이블 중 하나라도 바뀌면 증가한다.
+    public long version(String... tables) {
+        long version = 0;
+        for (String table : tables) {
+            version += counter(table).get();
+        }
+        return version;
+    }
+
+    /*
+     *  tables 의 현재 버전과 조회 키(검색 조건, 페이지 등)로 만든 강한 ETag
+     *  key 는 toString()이 조회 값을 모두 담고 있어야 한다. ex) MemberSearchCondition, Pageable
+     * */
+    public String etag(String[] tables, Object... key) {
+        StringBuilder source = new StringBuilder();
+        for (Object part : key) {
+            source.append(part).append('\n');
+        }
+        String keyHash = DigestUtils.md5DigestAsHex(source.toString().getBytes(StandardCharsets.UTF_8));
+        return "\"" + Long.toHexString(epoch) + "-" + Long.toHexString(version(tables)) + "-" + keyHash + "\"";
+    }
+
+    private void changed(String table) {
+        counter(table).incrementAndGet();
+    }
+
+    private AtomicLong counter(String table) {
+        return versions.computeIfAbsent(table.toLowerCase(Locale.ROOT), key -> new AtomicLong());
+    }
+}
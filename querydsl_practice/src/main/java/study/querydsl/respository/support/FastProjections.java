@@ -0,0 +1,290 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionException;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.util.ConstructorUtils;
+import com.querydsl.core.util.PrimitiveUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+ *  Projections.bean / fields / constructor 와 같은 방식으로 사용하지만, 로우마다 리플렉션을 사용하지 않는다.
+ *  -> DTO 생성자, setter, 필드에 대한 MethodHandle(가능하면 LambdaMetafactory로 만든 람다)을 한 번만 만들어서
+ *     대상 클래스 + 프로퍼티 이름(생성자는 인자 타입) 조합마다 캐시해둔다.
+ *  -> @QueryProjection 없이도 (ex. UserDto) 비슷한 비용으로 DTO를 만들 수 있다.
+ *
+ *  Projections와 동일하게 동작한다.
+ *  - bean / fields : 매칭되는 프로퍼티가 없거나 값이 null 이면 값을 넣지 않는다.
+ *  - constructor : 기본 타입 파라미터에 null 이 들어오면 기본값(0, false)으로 바꾼다.
+ * */
+public final class FastProjections {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Map<List<Object>, Function<Object[], ?>> INSTANTIATORS = new ConcurrentHashMap<>();
+
+    private FastProjections() {
+    }
+
+    public static <T> FactoryExpression<T> bean(Class<? extends T> type, Expression<?>... exprs) {
+        List<String> names = propertyNames(exprs);
+        return new FastProjection<>(type, exprs, instantiator(Arrays.asList("bean", type, names),
+                () -> propertyInstantiator(type, names, false)));
+    }
+
+    public static <T> FactoryExpression<T> fields(Class<? extends T> type, Expression<?>... exprs) {
+        List<String> names = propertyNames(exprs);
+        return new FastProjection<>(type, exprs, instantiator(Arrays.asList("fields", type, names),
+                () -> propertyInstantiator(type, names, true)));
+    }
+
+    public static <T> FactoryExpression<T> constructor(Class<? extends T> type, Expression<?>... exprs) {
+        Class<?>[] paramTypes = new Class<?>[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            paramTypes[i] = exprs[i].getType();
+        }
+        return new FastProjection<>(type, exprs, instantiator(Arrays.asList("constructor", type, Arrays.asList(paramTypes)),
+                () -> constructorInstantiator(type, paramTypes)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Function<Object[], T> instantiator(List<Object> key, Supplier<Function<Object[], ?>> factory) {
+        return (Function<Object[], T>) INSTANTIATORS.computeIfAbsent(key, k -> factory.get());
+    }
+
+    // ex) member.username -> username, member.username.as("name") -> name
+    private static List<String> propertyNames(Expression<?>[] exprs) {
+        List<String> names = new ArrayList<>(exprs.length);
+        for (Expression<?> expr : exprs) {
+            if (expr instanceof Path) {
+                names.add(((Path<?>) expr).getMetadata().getName());
+            } else if (expr instanceof Operation && ((Operation<?>) expr).getOperator() == Ops.ALIAS) {
+                names.add(((Path<?>) ((Operation<?>) expr).getArg(1)).getMetadata().getName());
+            } else {
+                throw new IllegalArgumentException("Unsupported expression " + expr + ", use as() to name it");
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private static Function<Object[], Object> propertyInstantiator(Class<?> type, List<String> names, boolean fieldAccess) {
+        Supplier<Object> factory = noArgConstructor(type);
+        List<BiConsumer<Object, Object>> writers = new ArrayList<>(names.size());
+        for (String name : names) {
+            writers.add(fieldAccess ? fieldWriter(type, name) : setterWriter(type, name));
+        }
+
+        return args -> {
+            Object bean = factory.get();
+            for (int i = 0; i < args.length; i++) {
+                BiConsumer<Object, Object> writer = writers.get(i);
+                if (writer != null && args[i] != null) {
+                    writer.accept(bean, args[i]);
+                }
+            }
+            return bean;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> noArgConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            if (isPublic(type, constructor.getModifiers())) {
+                MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                        MethodType.methodType(Supplier.class), MethodType.methodType(Object.class),
+                        handle, MethodType.methodType(type));
+                return (Supplier<Object>) site.getTarget().invoke();
+            }
+
+            MethodHandle handle = privateLookup(type).unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return handle.invokeExact();
+                } catch (Throwable e) {
+                    throw new ExpressionException(e.getMessage(), e);
+                }
+            };
+        } catch (Throwable e) {
+            throw new ExpressionException("No usable default constructor in " + type.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setterWriter(Class<?> type, String name) {
+        Method setter = findSetter(type, name);
+        if (setter == null) {
+            return null;
+        }
+
+        try {
+            Class<?> valueType = PrimitiveUtils.wrap(setter.getParameterTypes()[0]);
+            if (isPublic(setter.getDeclaringClass(), setter.getModifiers())) {
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                        MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class),
+                        LOOKUP.unreflect(setter),
+                        MethodType.methodType(void.class, type, valueType));
+                return (BiConsumer<Object, Object>) site.getTarget().invoke();
+            }
+
+            return writer(privateLookup(setter.getDeclaringClass()).unreflect(setter));
+        } catch (Throwable e) {
+            throw new ExpressionException("Cannot access setter for " + name + " in " + type.getName(), e);
+        }
+    }
+
+    private static BiConsumer<Object, Object> fieldWriter(Class<?> type, String name) {
+        Field field = findField(type, name);
+        if (field == null) {
+            return null;
+        }
+
+        try {
+            return writer(privateLookup(field.getDeclaringClass()).unreflectSetter(field));
+        } catch (IllegalAccessException e) {
+            throw new ExpressionException("Cannot access field " + name + " in " + type.getName(), e);
+        }
+    }
+
+    // (bean, value) 형태의 MethodHandle -> setter의 반환값은 버린다.
+    private static BiConsumer<Object, Object> writer(MethodHandle handle) {
+        MethodHandle generic = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (bean, value) -> {
+            try {
+                generic.invokeExact(bean, value);
+            } catch (Throwable e) {
+                throw new ExpressionException(e.getMessage(), e);
+            }
+        };
+    }
+
+    private static Function<Object[], Object> constructorInstantiator(Class<?> type, Class<?>[] paramTypes) {
+        try {
+            // Projections.constructor와 같은 규칙으로 생성자를 찾는다. (ex. Integer -> int)
+            Constructor<?> constructor = ConstructorUtils.getConstructor(type,
+                    ConstructorUtils.getConstructorParameters(type, paramTypes));
+            Class<?>[] parameters = constructor.getParameterTypes();
+
+            Object[] defaults = new Object[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                if (parameters[i].isPrimitive()) {
+                    // ex) int -> 0, boolean -> false
+                    defaults[i] = Array.get(Array.newInstance(parameters[i], 1), 0);
+                }
+            }
+
+            MethodHandle handle = privateLookup(type).unreflectConstructor(constructor)
+                    .asType(MethodType.genericMethodType(parameters.length))
+                    .asSpreader(Object[].class, parameters.length);
+
+            return args -> {
+                Object[] values = args;
+                for (int i = 0; i < defaults.length; i++) {
+                    if (values[i] == null && defaults[i] != null) {
+                        if (values == args) {
+                            values = args.clone();
+                        }
+                        values[i] = defaults[i];
+                    }
+                }
+                try {
+                    return handle.invokeExact(values);
+                } catch (Throwable e) {
+                    throw new ExpressionException(e.getMessage(), e);
+                }
+            };
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExpressionException("No constructor of " + type.getName()
+                    + " for " + Arrays.toString(paramTypes), e);
+        }
+    }
+
+    private static Method findSetter(Class<?> type, String name) {
+        String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(setterName) && method.getParameterCount() == 1
+                    && !Modifier.isStatic(method.getModifiers())) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                Field field = current.getDeclaredField(name);
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                    return field;
+                }
+            } catch (NoSuchFieldException e) {
+                // 상위 클래스에서 다시 찾는다.
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPublic(Class<?> type, int modifiers) {
+        return Modifier.isPublic(type.getModifiers()) && Modifier.isPublic(modifiers);
+    }
+
+    private static MethodHandles.Lookup privateLookup(Class<?> type) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(type, LOOKUP);
+    }
+
+    private static class FastProjection<T> extends FactoryExpressionBase<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Expression<?>> args;
+        private final Function<Object[], T> instantiator;
+
+        private FastProjection(Class<? extends T> type, Expression<?>[] args, Function<Object[], T> instantiator) {
+            super(type);
+            this.args = Collections.unmodifiableList(Arrays.asList(args.clone()));
+            this.instantiator = instantiator;
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        public T newInstance(Object... args) {
+            return instantiator.apply(args);
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+}
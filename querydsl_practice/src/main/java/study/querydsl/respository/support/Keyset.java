@@ -0,0 +1,149 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.types.ConstantImpl;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ *  Keyset(seek) 페이징
+ *  offset 대신 "마지막으로 읽은 row의 정렬 키 값" 이후부터 조회하기 때문에 몇 번째 페이지든 비용이 첫 페이지와 같다.
+ *  마지막 키는 반드시 유일해야 한다(ex. member.id) -> 같은 값이 여러 row에 있으면 row가 누락되거나 중복된다.
+ *  커서 값이 null이 되면 비교가 불가능하므로 null이 들어갈 수 없는 컬럼만 키로 사용해야 한다.
+ * */
+public class Keyset<T> {
+
+    private static final String SEPARATOR = ".";
+
+    private final List<Key<T>> keys;
+
+    private Keyset(List<Key<T>> keys) {
+        this.keys = keys;
+    }
+
+    public static <T> Keyset<T> orderBy(ComparableExpressionBase<?> expression, Order order, Function<T, ?> extractor) {
+        return new Keyset<T>(Collections.emptyList()).thenBy(expression, order, extractor);
+    }
+
+    public Keyset<T> thenBy(ComparableExpressionBase<?> expression, Order order, Function<T, ?> extractor) {
+        List<Key<T>> newKeys = new ArrayList<>(keys);
+        newKeys.add(new Key<>(expression, order, extractor));
+        return new Keyset<>(newKeys);
+    }
+
+    public KeysetPage<T> fetch(JPAQuery<T> query, String cursor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Keyset page size must be greater than zero!");
+        }
+
+        if (cursor != null && !cursor.isEmpty()) {
+            query.where(seekPredicate(decode(cursor)));
+        }
+
+        for (Key<T> key : keys) {
+            query.orderBy(key.order == Order.ASC ? key.expression.asc() : key.expression.desc());
+        }
+
+        // 다음 페이지 존재 여부는 count 쿼리 없이 한 건 더 조회해서 판단한다.
+        List<T> result = query.limit(size + 1L).fetch();
+        boolean hasNext = result.size() > size;
+        List<T> content = hasNext ? result.subList(0, size) : result;
+        String nextCursor = hasNext ? encode(content.get(content.size() - 1)) : null;
+
+        return new KeysetPage<>(content, size, hasNext, nextCursor);
+    }
+
+    /*
+     *  (k1, k2, k3) > (v1, v2, v3) 를 아래와 같이 풀어서 만든다. (desc 키는 < 로 비교)
+     *  k1 > v1 or (k1 = v1 and k2 > v2) or (k1 = v1 and k2 = v2 and k3 > v3)
+     * */
+    private Predicate seekPredicate(List<Object> values) {
+        Predicate seek = null;
+        Predicate equalPrefix = null;
+
+        for (int i = 0; i < keys.size(); i++) {
+            Key<T> key = keys.get(i);
+            Object value = values.get(i);
+
+            Predicate after = ExpressionUtils.predicate(key.order == Order.ASC ? Ops.GT : Ops.LT,
+                    key.expression, ConstantImpl.create(value));
+            seek = ExpressionUtils.or(seek, ExpressionUtils.and(equalPrefix, after));
+            equalPrefix = ExpressionUtils.and(equalPrefix,
+                    ExpressionUtils.predicate(Ops.EQ, key.expression, ConstantImpl.create(value)));
+        }
+
+        return seek;
+    }
+
+    private String encode(T row) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        StringBuilder token = new StringBuilder();
+
+        for (Key<T> key : keys) {
+            Object value = key.extractor.apply(row);
+            if (value == null) {
+                throw new IllegalStateException("Keyset key must not be null! : " + key.expression);
+            }
+            if (token.length() > 0) {
+                token.append(SEPARATOR);
+            }
+            token.append(encoder.encodeToString(value.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+
+        return token.toString();
+    }
+
+    private List<Object> decode(String cursor) {
+        String[] tokens = cursor.split("\\" + SEPARATOR, -1);
+        if (tokens.length != keys.size()) {
+            throw new IllegalArgumentException("Invalid keyset cursor: " + cursor);
+        }
+
+        List<Object> values = new ArrayList<>(tokens.length);
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                String raw = new String(Base64.getUrlDecoder().decode(tokens[i]), StandardCharsets.UTF_8);
+                values.add(convert(raw, keys.get(i).expression.getType()));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid keyset cursor: " + cursor, e);
+        }
+
+        return values;
+    }
+
+    private static Object convert(String raw, Class<?> type) {
+        if (type == String.class) {
+            return raw;
+        }
+        if (type == Long.class) {
+            return Long.valueOf(raw);
+        }
+        if (type == Integer.class) {
+            return Integer.valueOf(raw);
+        }
+        throw new IllegalArgumentException("Unsupported keyset key type: " + type.getName());
+    }
+
+    private static class Key<T> {
+        private final ComparableExpressionBase<?> expression;
+        private final Order order;
+        private final Function<T, ?> extractor;
+
+        private Key(ComparableExpressionBase<?> expression, Order order, Function<T, ?> extractor) {
+            this.expression = expression;
+            this.order = order;
+            this.extractor = extractor;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package study.querydsl.respository.support;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final int size;
+    private final boolean hasNext;
+    // 다음 페이지를 요청할 때 그대로 넘겨주면 되는 커서 토큰 (마지막 페이지면 null)
+    private final String nextCursor;
+
+    public KeysetPage(List<T> content, int size, boolean hasNext, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+}
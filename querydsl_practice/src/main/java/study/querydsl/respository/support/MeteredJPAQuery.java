@@ -0,0 +1,89 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryResults;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/*
+ *  fetch / fetchOne / fetchCount / fetchResults 실행을 QueryMetrics에 기록하는 JPAQuery
+ *  MeteredJPAQueryFactory로 만든 쿼리는 모두 이 타입이다. (select()는 같은 객체를 반환하기 때문에 유지된다)
+ *
+ *  병렬 count처럼 다른 스레드에서 실행되는 복제본은 호출 스택에 리포지토리 메서드가 없기 때문에
+ *  clone 하는 시점(= 리포지토리 스레드)의 호출 위치를 기억해둔다.
+ * */
+public class MeteredJPAQuery<T> extends JPAQuery<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final QueryMetrics metrics;
+    private final String method;
+
+    public MeteredJPAQuery(EntityManager entityManager, QueryMetrics metrics) {
+        super(entityManager);
+        this.metrics = metrics;
+        this.method = null;
+    }
+
+    public MeteredJPAQuery(EntityManager entityManager, QueryMetadata metadata, QueryMetrics metrics) {
+        super(entityManager, metadata);
+        this.metrics = metrics;
+        this.method = null;
+    }
+
+    private MeteredJPAQuery(EntityManager entityManager, JPQLTemplates templates, QueryMetadata metadata,
+                            QueryMetrics metrics, String method) {
+        super(entityManager, templates, metadata);
+        this.metrics = metrics;
+        this.method = method;
+    }
+
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    // 같은 메트릭으로 기록하는 새 쿼리 ex) content 쿼리로부터 만든 count 쿼리
+    public MeteredJPAQuery<?> newQuery(EntityManager entityManager, QueryMetadata metadata) {
+        return new MeteredJPAQuery<>(entityManager, metadata, metrics);
+    }
+
+    @Override
+    public List<T> fetch() {
+        return record("fetch", super::fetch, List::size);
+    }
+
+    @Override
+    public T fetchOne() {
+        return record("fetchOne", super::fetchOne, result -> result == null ? 0 : 1);
+    }
+
+    @Override
+    @Deprecated
+    public QueryResults<T> fetchResults() {
+        return record("fetchResults", super::fetchResults, result -> result.getResults().size());
+    }
+
+    @Override
+    @Deprecated
+    public long fetchCount() {
+        return record("fetchCount", super::fetchCount, count -> 1);
+    }
+
+    @Override
+    public MeteredJPAQuery<T> clone(EntityManager entityManager, JPQLTemplates templates) {
+        MeteredJPAQuery<T> query = new MeteredJPAQuery<>(entityManager, templates, getMetadata().clone(),
+                metrics, method != null ? method : metrics.caller());
+        query.clone(this);
+        return query;
+    }
+
+    private <R> R record(String operation, Supplier<R> query, ToIntFunction<R> rows) {
+        return metrics.record(method != null ? method : metrics.caller(), operation,
+                QueryMetrics.predicate(getMetadata().getWhere()), query, rows);
+    }
+}
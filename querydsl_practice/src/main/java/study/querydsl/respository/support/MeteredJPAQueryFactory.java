@@ -0,0 +1,27 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import javax.persistence.EntityManager;
+
+/*
+ *  select / selectFrom / from 으로 만든 쿼리가 실행 시간, row 수, 예외를 QueryMetrics에 기록한다.
+ *  update / delete / insert 는 기존과 동일하다.
+ * */
+public class MeteredJPAQueryFactory extends JPAQueryFactory {
+
+    private final EntityManager entityManager;
+    private final QueryMetrics metrics;
+
+    public MeteredJPAQueryFactory(EntityManager entityManager, QueryMetrics metrics) {
+        super(entityManager);
+        this.entityManager = entityManager;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public JPAQuery<?> query() {
+        return new MeteredJPAQuery<Void>(entityManager, metrics);
+    }
+}
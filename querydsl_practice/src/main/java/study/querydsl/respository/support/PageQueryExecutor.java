@@ -0,0 +1,59 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/*
+ *  content 쿼리와 count 쿼리를 실행해서 Page를 만든다.
+ *  count는 캐시 -> (가능하면) 병렬 실행 -> 순차 실행 순서로 구하고, 세는 방법은 CountPolicy를 따른다.
+ *  반환되는 Page(CountedPage)는 total이 정확한 값인지 추정값인지 알려준다.
+ *
+ *  병렬로 실행할 때는 content를 알기 전에 count를 시작한다.
+ *  -> 첫 페이지 / 마지막 페이지처럼 count가 필요 없는 페이지여도 이미 시작한 count는 취소되지 않고
+ *     끝까지 실행된다. (병렬 count 스레드와 커넥션 하나를 그만큼 사용한다.)
+ *     응답 시간을 줄이는 대신 이런 페이지에서는 DB 작업이 늘어난다. -> 페이지가 하나뿐인 검색이 많으면 끄는 편이 낫다.
+ * */
+@Component
+@RequiredArgsConstructor
+public class PageQueryExecutor {
+
+    private final CountQueryCache countQueryCache;
+    private final ParallelCountExecutor parallelCountExecutor;
+    private final CountPolicy countPolicy;
+
+    public <T> Page<T> getPage(Pageable pageable, Supplier<List<T>> contentQuery, JPAQuery<Long> countQuery) {
+        if (!parallelCountExecutor.isAvailable() || countQueryCache.contains(countQuery)) {
+            List<T> content = contentQuery.get();
+            return page(content, pageable, countQueryCache.cached(countQuery, () -> countPolicy.count(countQuery)));
+        }
+
+        ParallelCountExecutor.PendingCount pendingCount = parallelCountExecutor.submit(countQuery, countPolicy::count);
+        try {
+            List<T> content = contentQuery.get();
+            return page(content, pageable, countQueryCache.cached(countQuery, pendingCount));
+        } finally {
+            pendingCount.cancelIfNotStarted();
+        }
+    }
+
+    // count 쿼리를 실행하지 않고 content로 total을 구한 경우(첫 페이지 / 마지막 페이지)는 항상 정확한 값이다.
+    private <T> Page<T> page(List<T> content, Pageable pageable, LongSupplier total) {
+        AtomicBoolean counted = new AtomicBoolean();
+        Page<T> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            counted.set(true);
+            return total.getAsLong();
+        });
+
+        long totalElements = page.getTotalElements();
+        return new CountedPage<>(content, pageable, totalElements, !counted.get() || countPolicy.isExact(totalElements));
+    }
+}
@@ -0,0 +1,123 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/*
+ *  count 쿼리를 별도의 EntityManager(= 별도의 커넥션)로 content 쿼리와 동시에 실행한다.
+ *  querydsl.parallel-count.enabled=true 일 때만 동작한다.
+ *
+ *  별도의 커넥션은 현재 트랜잭션에서 커밋되지 않은 변경을 볼 수 없기 때문에
+ *  트랜잭션이 없거나 readOnly 트랜잭션일 때만 병렬로 실행하고, 나머지는 기존처럼 순서대로 실행한다.
+ *  count가 필요 없는 페이지에서는 아직 큐에서 기다리는 count만 빠진다. -> 이미 실행 중인 count 쿼리는 중단하지 않는다.
+ * */
+@Component
+public class ParallelCountExecutor {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final StatementCounter statementCounter;
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+
+    public ParallelCountExecutor(EntityManagerFactory entityManagerFactory,
+                                 StatementCounter statementCounter,
+                                 @Value("${querydsl.parallel-count.enabled:false}") boolean enabled,
+                                 @Value("${querydsl.parallel-count.threads:4}") int threads,
+                                 @Value("${querydsl.parallel-count.queue-capacity:100}") int queueCapacity) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.statementCounter = statementCounter;
+        this.enabled = enabled;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("parallel-count-"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public boolean isAvailable() {
+        return enabled
+                && (!TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+
+    /*
+     *  count 쿼리를 counter(CountPolicy)로 바로 실행 시작하고 결과를 기다리는 PendingCount를 반환한다.
+     *  executor가 가득 차 있으면 호출한 스레드에서 필요할 때 실행하도록 되돌린다.
+     * */
+    public PendingCount submit(JPAQuery<Long> countQuery, ToLongFunction<JPAQuery<Long>> counter) {
+        JPAQuery<Long> query = countQuery.clone();
+        try {
+            Supplier<Long> task = statementCounter.propagate(() -> count(query, counter));
+            return new PendingCount(executor.submit(task::get));
+        } catch (RejectedExecutionException e) {
+            return new PendingCount(CompletableFuture.completedFuture(null), () -> counter.applyAsLong(countQuery));
+        }
+    }
+
+    private long count(JPAQuery<Long> countQuery, ToLongFunction<JPAQuery<Long>> counter) {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            return counter.applyAsLong(countQuery.clone(em));
+        } finally {
+            em.close();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static class PendingCount implements LongSupplier {
+
+        private final Future<Long> future;
+        private final LongSupplier fallback;
+
+        private PendingCount(Future<Long> future) {
+            this(future, null);
+        }
+
+        private PendingCount(Future<Long> future, LongSupplier fallback) {
+            this.future = future;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public long getAsLong() {
+            if (fallback != null) {
+                return fallback.getAsLong();
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for count query", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Count query failed", e.getCause());
+            }
+        }
+
+        // count가 필요 없는 페이지라면 아직 시작하지 않은 count 쿼리만 취소한다. (실행 중인 쿼리는 끝까지 실행된다.)
+        public void cancelIfNotStarted() {
+            future.cancel(false);
+        }
+    }
+}
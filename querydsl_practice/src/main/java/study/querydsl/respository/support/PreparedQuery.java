@@ -0,0 +1,84 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAUtil;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  Param 자리표시자로 만든 쿼리를 JPQL 문자열로 한 번만 만들어두고, 이후에는 값만 바인딩해서 실행한다.
+ *  -> 호출할 때마다 BooleanExpression, 프로젝션 객체를 새로 만들고 JPQL로 직렬화하는 비용이 없어진다.
+ *  -> JPQL 문자열이 항상 같기 때문에 Hibernate의 쿼리 플랜 캐시도 그대로 재사용된다.
+ *
+ *  검색 조건마다 where 절의 모양(shape)이 달라지기 때문에, 조건 조합마다 하나씩 만들어서 캐시해두고 사용한다.
+ *  MeteredJPAQuery로 만든 경우 실행할 때마다 QueryMetrics에 기록한다.
+ * */
+public class PreparedQuery<T> {
+
+    private final String jpql;
+    private final List<Object> constants;
+    private final FactoryExpression<T> projection;
+    private final QueryMetrics metrics;
+    private final String predicate;
+
+    private PreparedQuery(String jpql, List<Object> constants, FactoryExpression<T> projection,
+                          QueryMetrics metrics, String predicate) {
+        this.jpql = jpql;
+        this.constants = constants;
+        this.projection = projection;
+        this.metrics = metrics;
+        this.predicate = predicate;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PreparedQuery<T> prepare(EntityManager entityManager, JPQLQuery<T> query) {
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(entityManager), entityManager);
+        serializer.serialize(query.getMetadata(), false, null);
+
+        Expression<?> projection = query.getMetadata().getProjection();
+        return new PreparedQuery<>(serializer.toString(),
+                Collections.unmodifiableList(new ArrayList<>(serializer.getConstants())),
+                projection instanceof FactoryExpression ? (FactoryExpression<T>) projection : null,
+                query instanceof MeteredJPAQuery ? ((MeteredJPAQuery<?>) query).getMetrics() : null,
+                QueryMetrics.predicate(query.getMetadata().getWhere()));
+    }
+
+    public String getJpql() {
+        return jpql;
+    }
+
+    public List<T> fetch(EntityManager entityManager, Map<ParamExpression<?>, Object> params) {
+        if (metrics == null) {
+            return doFetch(entityManager, params);
+        }
+        return metrics.record(metrics.caller(), "fetch", predicate, () -> doFetch(entityManager, params), List::size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> doFetch(EntityManager entityManager, Map<ParamExpression<?>, Object> params) {
+        Query query = entityManager.createQuery(jpql);
+        JPAUtil.setConstants(query, constants, params);
+        List<?> rows = query.getResultList();
+
+        if (projection == null) {
+            return (List<T>) rows;
+        }
+
+        // JPAQuery와 동일하게 select 절의 값들로 DTO를 만든다.
+        List<T> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            result.add(projection.newInstance(row instanceof Object[] ? (Object[]) row : new Object[]{row}));
+        }
+        return result;
+    }
+}
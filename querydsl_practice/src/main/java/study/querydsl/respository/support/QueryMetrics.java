@@ -0,0 +1,138 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.SubQueryExpression;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/*
+ *  Querydsl 쿼리 실행마다 아래 메트릭을 기록한다. -> /actuator/prometheus
+ *  - querydsl.query        : 실행 시간 (히스토그램)
+ *  - querydsl.query.rows   : 조회된 row 수 (히스토그램)
+ *  - querydsl.query.errors : 예외가 발생한 횟수
+ *
+ *  태그
+ *  - method    : 쿼리를 실행한 리포지토리 메서드 ex) MemberJpaRepository.search
+ *  - predicate : where 절에 사용된 (경로:연산자) 목록 ex) Member.age:GOE,Team.name:EQ
+ *                -> 검색 조건 중 어떤 필드가 채워졌는지에 따라 값이 달라진다. 검색 값은 들어가지 않는다.
+ *  - operation : fetch, fetchOne, fetchCount, fetchResults
+ * */
+@Component
+public class QueryMetrics {
+
+    private static final String REPOSITORY_PACKAGE = "study.querydsl.respository.";
+    private static final String SUPPORT_PACKAGE = REPOSITORY_PACKAGE + "support.";
+    private static final String UNKNOWN = "unknown";
+    private static final String NONE = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final StackWalker stackWalker = StackWalker.getInstance();
+
+    public QueryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T record(String method, String operation, String predicate, Supplier<T> query, ToIntFunction<T> rows) {
+        Tags tags = Tags.of("method", method, "operation", operation, "predicate", predicate);
+        String exception = NONE;
+        long startedAt = System.nanoTime();
+        try {
+            T result = query.get();
+            DistributionSummary.builder("querydsl.query.rows")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(1.0)
+                    .maximumExpectedValue(100_000.0)
+                    .register(meterRegistry)
+                    .record(rows.applyAsInt(result));
+            return result;
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            meterRegistry.counter("querydsl.query.errors", tags.and("exception", exception)).increment();
+            throw e;
+        } finally {
+            Timer.builder("querydsl.query")
+                    .tags(tags.and("exception", exception))
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /*
+     *  호출 스택에서 가장 가까운 리포지토리 메서드를 찾는다. (support 패키지, 스프링 프록시는 건너뛴다)
+     *  람다 안에서 실행된 경우 lambda$search$0 -> search
+     * */
+    public String caller() {
+        return stackWalker.walk(frames -> frames
+                .filter(frame -> isRepositoryFrame(frame.getClassName()))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + methodName(frame.getMethodName()))
+                .orElse(UNKNOWN));
+    }
+
+    public static String predicate(Predicate where) {
+        if (where == null) {
+            return NONE;
+        }
+        Set<String> shape = new TreeSet<>();
+        collect(where, shape);
+        return shape.isEmpty() ? NONE : String.join(",", shape);
+    }
+
+    private static void collect(Expression<?> expression, Set<String> shape) {
+        if (expression instanceof SubQueryExpression) {
+            shape.add("subquery");
+        } else if (expression instanceof Operation) {
+            Operation<?> operation = (Operation<?>) expression;
+            for (Expression<?> arg : operation.getArgs()) {
+                if (arg instanceof Path) {
+                    shape.add(pathName((Path<?>) arg) + ":" + operation.getOperator());
+                } else {
+                    collect(arg, shape);
+                }
+            }
+        }
+    }
+
+    // 별칭 대신 엔티티 이름을 사용한다. ex) member1.team.name -> Member.team.name
+    private static String pathName(Path<?> path) {
+        Path<?> root = path.getRoot();
+        return root.getType().getSimpleName() + path.toString().substring(root.toString().length());
+    }
+
+    private static boolean isRepositoryFrame(String className) {
+        return className.startsWith(REPOSITORY_PACKAGE)
+                && !className.startsWith(SUPPORT_PACKAGE)
+                && !className.contains("$$");
+    }
+
+    private static String simpleName(String className) {
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        int inner = simpleName.indexOf('$');
+        return inner < 0 ? simpleName : simpleName.substring(0, inner);
+    }
+
+    private static String methodName(String methodName) {
+        if (methodName.startsWith("lambda$")) {
+            int end = methodName.indexOf('$', "lambda$".length());
+            return end < 0 ? methodName : methodName.substring("lambda$".length(), end);
+        }
+        return methodName;
+    }
+}
@@ -2,23 +2,33 @@ package study.querydsl.respository.support;
 
 
 import com.mysema.commons.lang.Assert;
+import com.querydsl.core.FilteredClause;
+import com.querydsl.core.dml.DMLClause;
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.core.types.dsl.PathBuilder;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
 import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.querydsl.SimpleEntityPathResolver;
-import org.springframework.data.support.PageableExecutionUtils;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 public abstract class Querydsl4RepositorySupport {
@@ -27,6 +37,9 @@ public abstract class Querydsl4RepositorySupport {
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
+    private PageQueryExecutor pageQueryExecutor;
+    private ChunkedBulkExecutor chunkedBulkExecutor;
+    private final Map<Object, PreparedQuery<?>> preparedQueries = new ConcurrentHashMap<>();
 
     public Querydsl4RepositorySupport(Class<?> domainClass) {
         Assert.notNull(domainClass, "Domain class must not be null!");
@@ -44,7 +57,25 @@ public abstract class Querydsl4RepositorySupport {
 
         // sort 에서 발생하는 에러를 해결하기 위해서 제대로 Querydsl 객체를 만들어 주는 코드
         this.querydsl = new Querydsl(entityManager, new PathBuilder<Object>(path.getType(), path.getMetadata().getName()));
-        this.queryFactory = new JPAQueryFactory(entityManager);
+    }
+
+    // 직접 만들지 않고 빈으로 등록된 JPAQueryFactory를 사용한다. -> 쿼리 메트릭이 기록된다.
+    @Autowired
+    public void setQueryFactory(JPAQueryFactory queryFactory) {
+        Assert.notNull(queryFactory, "QueryFactory must not be null!");
+        this.queryFactory = queryFactory;
+    }
+
+    @Autowired
+    public void setPageQueryExecutor(PageQueryExecutor pageQueryExecutor) {
+        Assert.notNull(pageQueryExecutor, "PageQueryExecutor must not be null!");
+        this.pageQueryExecutor = pageQueryExecutor;
+    }
+
+    @Autowired
+    public void setChunkedBulkExecutor(ChunkedBulkExecutor chunkedBulkExecutor) {
+        Assert.notNull(chunkedBulkExecutor, "ChunkedBulkExecutor must not be null!");
+        this.chunkedBulkExecutor = chunkedBulkExecutor;
     }
 
     @PostConstruct
@@ -52,6 +83,8 @@ public abstract class Querydsl4RepositorySupport {
         Assert.notNull(entityManager, "EntityManager must not be null!");
         Assert.notNull(querydsl, "Querydsl must not be null!");
         Assert.notNull(queryFactory, "QueryFactory must not be null!");
+        Assert.notNull(pageQueryExecutor, "PageQueryExecutor must not be null!");
+        Assert.notNull(chunkedBulkExecutor, "ChunkedBulkExecutor must not be null!");
     }
 
     protected JPAQueryFactory getQueryFactory() { return queryFactory; }
@@ -64,6 +97,10 @@ public abstract class Querydsl4RepositorySupport {
         return entityManager;
     }
 
+    protected PageQueryExecutor getPageQueryExecutor() {
+        return pageQueryExecutor;
+    }
+
     protected <T> JPAQuery<T> select(Expression<T> expr) {
         return getQueryFactory().select(expr);
     }
@@ -72,18 +109,111 @@ public abstract class Querydsl4RepositorySupport {
         return getQueryFactory().selectFrom(from);
     }
 
+    /*
+     *  content 쿼리에서 select, order by, fetch join, 사용하지 않는 to-one left join을 걷어낸 count 쿼리를 만든다.
+     * */
+    protected JPAQuery<Long> countQuery(JPAQuery<?> contentQuery) {
+        return CountQueryGenerator.generate(getEntityManager(), contentQuery);
+    }
+
+    /*
+     *  update / delete 를 id 범위로 나눠서 청크마다 별도의 짧은 트랜잭션으로 실행한다.
+     *  clause는 청크마다 호출되고, id 범위 조건은 자동으로 추가된다.
+     * */
+    protected <C extends DMLClause<C> & FilteredClause<C>> long chunkedBulk(NumberPath<Long> id, BulkChunkOptions options,
+                                                                           Function<JPAQueryFactory, C> clause) {
+        return chunkedBulkExecutor.execute(getQueryFactory(), id, options, clause);
+    }
+
+    /*
+     *  쿼리 캐시를 사용한다. 영역(region)마다 크기, 만료 시간은 application.conf 에서 설정한다.
+     *  쿼리가 사용하는 테이블이 변경(엔티티 변경, 벌크 연산)되면 캐시된 결과는 사용되지 않는다.
+     * */
+    protected <T> JPAQuery<T> cacheable(JPAQuery<T> query, String region) {
+        return query
+                .setHint(QueryHints.HINT_CACHEABLE, true)
+                .setHint(QueryHints.HINT_CACHE_REGION, region);
+    }
+
+    /*
+     *  Param 자리표시자로 만든 쿼리를 shape(key)마다 한 번만 JPQL로 직렬화해서 캐시해둔다.
+     *  실행할 때는 값만 바인딩한다. -> PreparedQuery.fetch(getEntityManager(), params)
+     * */
+    @SuppressWarnings("unchecked")
+    protected <T> PreparedQuery<T> prepared(Object shape, Function<JPAQueryFactory, JPAQuery<T>> query) {
+        return (PreparedQuery<T>) preparedQueries.computeIfAbsent(shape,
+                key -> PreparedQuery.prepare(getEntityManager(), query.apply(getQueryFactory())));
+    }
+
     protected <T> Page<T> applyPagination(Pageable pageable, Function<JPAQueryFactory, JPAQuery> contentQuery) {
         JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable, jpaQuery).fetch();
-        return PageableExecutionUtils.getPage(content, pageable, jpaQuery::fetchCount);
+        JPAQuery<Long> countQuery = countQuery(jpaQuery);
+        return pageQueryExecutor.getPage(pageable, () -> getQuerydsl().applyPagination(pageable, jpaQuery).fetch(), countQuery);
     }
 
     protected <T> Page<T> applyPagination(Pageable pageable, Function<JPAQueryFactory, JPAQuery> contentQuery,
                                           Function<JPAQueryFactory, JPAQuery> countQuery) {
         JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable, jpaContentQuery).fetch();
+        JPAQuery<Long> countResult = countQuery(countQuery.apply(getQueryFactory()));
+        return pageQueryExecutor.getPage(pageable, () -> getQuerydsl().applyPagination(pageable, jpaContentQuery).fetch(), countResult);
+    }
+
+    // count 쿼리 없이 pageSize + 1 개만 조회한다. 정렬은 Pageable의 sort를 적용한다.
+    protected <T> Slice<T> applySlicePagination(Pageable pageable, Function<JPAQueryFactory, JPAQuery<T>> contentQuery) {
+        JPAQuery<T> jpaQuery = contentQuery.apply(getQueryFactory());
+        return SliceQuery.fetch(getQuerydsl().applySorting(pageable.getSort(), jpaQuery), pageable);
+    }
+
+    /*
+     *  컬렉션을 fetch join 하면 DB에서 페이징할 수 없기 때문에(메모리에서 페이징) 두 번에 나눠서 조회한다.
+     *  1. idQuery로 루트 엔티티의 id만 페이징해서 가져온다. -> 정렬, 검색 조건은 여기에 적용된다.
+     *  2. contentQuery에 id in 조건을 추가해서 컬렉션까지 fetch join 한 엔티티를 한 번에 가져오고, 1의 순서대로 정렬한다.
+     *  count 쿼리는 idQuery로 만든다.
+     *
+     *  idQuery에서 컬렉션을 join 하면 id가 중복되기 때문에 to-one join 만 사용해야 한다.
+     * */
+    protected <T> Page<T> applyTwoPhasePagination(Pageable pageable, NumberPath<Long> id,
+                                                  Function<JPAQueryFactory, JPAQuery<?>> idQuery,
+                                                  Function<JPAQueryFactory, JPAQuery<T>> contentQuery) {
+        JPAQuery<Long> ids = idQuery.apply(getQueryFactory()).select(id);
+        JPAQuery<Long> countQuery = countQuery(ids);
+
+        return pageQueryExecutor.getPage(pageable, () -> {
+            List<Long> pageIds = getQuerydsl().applyPagination(pageable, ids).fetch();
+            if (pageIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            // fetch join으로 늘어난 row는 Hibernate가 메모리에서 합쳐준다. -> SQL에는 distinct를 넣지 않는다.
+            List<T> content = contentQuery.apply(getQueryFactory())
+                    .where(id.in(pageIds))
+                    .distinct()
+                    .setHint(QueryHints.HINT_PASS_DISTINCT_THROUGH, false)
+                    .fetch();
+            return sortByIds(content, pageIds);
+        }, countQuery);
+    }
+
+    private <T> List<T> sortByIds(List<T> content, List<Long> ids) {
+        PersistenceUnitUtil persistenceUnitUtil = getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+        Map<Object, T> byId = new HashMap<>();
+        for (T entity : content) {
+            byId.put(persistenceUnitUtil.getIdentifier(entity), entity);
+        }
+
+        List<T> sorted = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T entity = byId.get(id);
+            if (entity != null) {
+                sorted.add(entity);
+            }
+        }
+        return sorted;
+    }
 
-        JPAQuery countResult = countQuery.apply(getQueryFactory());
-        return PageableExecutionUtils.getPage(content, pageable, countResult::fetchCount);
+    protected <T> KeysetPage<T> applyKeysetPagination(String cursor, int size, Keyset<T> keyset,
+                                                      Function<JPAQueryFactory, JPAQuery<T>> contentQuery) {
+        JPAQuery<T> jpaQuery = contentQuery.apply(getQueryFactory());
+        return keyset.fetch(jpaQuery, cursor, size);
     }
 }
@@ -0,0 +1,138 @@
+package study.querydsl.respository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+ *  replica는 primary보다 조금 늦게 반영되기 때문에, 방금 쓴 데이터를 바로 조회하면 보이지 않을 수 있다.
+ *  -> 쓰기(insert / update / delete) 이후 pin-duration 동안은 같은 세션의 읽기도 primary로 보낸다.
+ *
+ *  세션은 요청마다 bind 한다. (ReadYourWritesFilter)
+ *  bind 되지 않은 스레드(배치, 테스트)는 스레드 단위로 고정된다.
+ *
+ *  readPrimary -> 쓰기와 상관없이 범위 안의 읽기를 primary로 보낸다. (ETag를 붙이는 조회, MemberController)
+ *  replica 지연 때문에 ETag의 데이터 버전보다 오래된 결과가 나가지 않게 한다. 세션 고정과 달리 SingleFlight는 그대로 사용한다.
+ * */
+@Component
+public class ReadYourWrites {
+
+    // 만료된 세션을 정리하기 시작하는 크기
+    private static final int CLEANUP_THRESHOLD = 10_000;
+
+    private final boolean enabled;
+    private final long pinNanos;
+
+    private final ThreadLocal<String> session = new ThreadLocal<>();
+    private final ThreadLocal<Long> threadLastWrite = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> primaryScope = new ThreadLocal<>();
+    private final Map<String, Long> sessionLastWrites = new ConcurrentHashMap<>();
+
+    public ReadYourWrites(DataChangeTracker dataChangeTracker,
+                          @Value("${querydsl.datasource.read-your-writes.enabled:true}") boolean enabled,
+                          @Value("${querydsl.datasource.read-your-writes.pin-duration:5s}") Duration pinDuration) {
+        this.enabled = enabled;
+        this.pinNanos = pinDuration.toNanos();
+        // 변경은 쓰기를 실행한 스레드에서 알려준다. (커밋 이후에 한 번 더 알려주기 때문에 커밋 시점부터 다시 계산된다.)
+        dataChangeTracker.addListener(table -> written());
+    }
+
+    public void bind(String sessionId) {
+        session.set(sessionId);
+    }
+
+    // 요청이 끝나면 세션과 스레드 고정을 모두 해제한다. -> 풀의 스레드가 다음 요청까지 primary로 고정되지 않는다.
+    public void clear() {
+        session.remove();
+        threadLastWrite.remove();
+        primaryScope.remove();
+    }
+
+    // task 안의 읽기는 primary에서 한다. (task가 다른 스레드로 넘기는 작업은 propagate로 함께 넘어간다.)
+    public <T> T readPrimary(Supplier<T> task) {
+        Boolean previous = primaryScope.get();
+        primaryScope.set(Boolean.TRUE);
+        try {
+            return task.get();
+        } finally {
+            setPrimaryScope(previous);
+        }
+    }
+
+    public boolean isPrimaryScope() {
+        return Boolean.TRUE.equals(primaryScope.get());
+    }
+
+    /*
+     *  다른 스레드에서 실행할 작업에 현재 세션, 스레드 고정, readPrimary 범위를 넘겨준다. (AsyncQueryExecutor)
+     *  작업이 끝나면 실행한 스레드의 원래 값으로 되돌린다.
+     * */
+    public <T> Supplier<T> propagate(Supplier<T> task) {
+        String sessionId = session.get();
+        Long lastWrite = threadLastWrite.get();
+        Boolean primary = primaryScope.get();
+        return () -> {
+            String previousSessionId = session.get();
+            Long previousLastWrite = threadLastWrite.get();
+            Boolean previousPrimary = primaryScope.get();
+            set(sessionId, lastWrite);
+            setPrimaryScope(primary);
+            try {
+                return task.get();
+            } finally {
+                set(previousSessionId, previousLastWrite);
+                setPrimaryScope(previousPrimary);
+            }
+        };
+    }
+
+    private void setPrimaryScope(Boolean primary) {
+        if (primary == null) {
+            primaryScope.remove();
+        } else {
+            primaryScope.set(primary);
+        }
+    }
+
+    private void set(String sessionId, Long lastWrite) {
+        if (sessionId == null) {
+            session.remove();
+        } else {
+            session.set(sessionId);
+        }
+        if (lastWrite == null) {
+            threadLastWrite.remove();
+        } else {
+            threadLastWrite.set(lastWrite);
+        }
+    }
+
+    public void written() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        String sessionId = session.get();
+        if (sessionId == null) {
+            threadLastWrite.set(now);
+            return;
+        }
+        sessionLastWrites.put(sessionId, now);
+        if (sessionLastWrites.size() > CLEANUP_THRESHOLD) {
+            sessionLastWrites.values().removeIf(writtenAt -> now - writtenAt >= pinNanos);
+        }
+    }
+
+    public boolean isPinned() {
+        if (!enabled) {
+            return false;
+        }
+        String sessionId = session.get();
+        Long writtenAt = sessionId != null ? sessionLastWrites.get(sessionId) : threadLastWrite.get();
+        return writtenAt != null && System.nanoTime() - writtenAt < pinNanos;
+    }
+}
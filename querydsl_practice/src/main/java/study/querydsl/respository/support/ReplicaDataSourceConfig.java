@@ -0,0 +1,73 @@
+package study.querydsl.respository.support;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  querydsl.datasource.replicas 가 설정된 경우에만 spring.datasource(primary) 대신 라우팅 DataSource를 등록한다.
+ *  설정이 없으면 기존처럼 spring.datasource 하나만 사용한다.
+ *
+ *  primary 풀에는 spring.datasource.hikari.* 설정을 그대로 적용한다. (기본 DataSource 자동 설정과 같은 풀)
+ *
+ *  p6spy는 라우팅 DataSource를 감싸기 때문에 primary / replica 어느 쪽으로 나간 SQL이든 함께 기록된다.
+ * */
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+@ConditionalOnProperty("querydsl.datasource.replicas[0].url")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties dataSourceProperties,
+                                 ReplicaProperties replicaProperties,
+                                 ReadYourWrites readYourWrites,
+                                 Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        // 자동 설정의 @ConfigurationProperties("spring.datasource.hikari")를 대신한다.
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        List<ReplicaProperties.Replica> replicaList = replicaProperties.getReplicas();
+        for (int i = 0; i < replicaList.size(); i++) {
+            ReplicaProperties.Replica replica = replicaList.get(i);
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("replica-" + i);
+            dataSource.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            dataSource.setJdbcUrl(replica.getUrl());
+            dataSource.setUsername(replica.getUsername());
+            dataSource.setPassword(replica.getPassword());
+            dataSource.setReadOnly(true);
+            dataSource.setConnectionTimeout(replicaProperties.getConnectionTimeout().toMillis());
+            // 기동 시점에 replica가 내려가 있어도 애플리케이션은 뜨고, primary로 조회한다.
+            dataSource.setInitializationFailTimeout(-1);
+            replicas.put(dataSource.getPoolName(), dataSource);
+        }
+
+        return new ReplicaRoutingDataSource(primary, replicas, readYourWrites,
+                replicaProperties.getHealthCheckInterval());
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+        ReplicaRoutingTransactionManager transactionManager = new ReplicaRoutingTransactionManager();
+        transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+        return transactionManager;
+    }
+}
@@ -0,0 +1,35 @@
+package study.querydsl.respository.support;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  querydsl.datasource.replicas 에 읽기 전용 DB를 설정하면 readOnly 트랜잭션의 조회가 replica로 나간다.
+ *  driver-class-name은 spring.datasource 설정을 그대로 사용한다.
+ * */
+@Getter
+@Setter
+@ConfigurationProperties("querydsl.datasource")
+public class ReplicaProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    // 장애로 빠진 replica가 다시 살아났는지 확인하는 주기
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+    // replica 커넥션을 얻지 못하면 이 시간 뒤에 다른 replica / primary로 넘어간다.
+    private Duration connectionTimeout = Duration.ofSeconds(1);
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
@@ -0,0 +1,172 @@
+package study.querydsl.respository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ *  @Transactional(readOnly = true) 트랜잭션은 replica로, 나머지는 primary로 보낸다.
+ *  - replica가 여러 개면 정상인 replica를 돌아가면서 사용한다.
+ *  - replica 커넥션을 얻지 못하면 장애로 표시하고 다음 replica -> primary 순서로 넘어간다.
+ *    장애로 표시된 replica는 health-check-interval 마다 확인해서 살아나면 다시 사용한다.
+ *  - 방금 쓰기를 한 세션과 readPrimary 범위(ReadYourWrites)는 readOnly 여도 primary를 사용한다.
+ *
+ *  트랜잭션 동기화의 readOnly 표시는 커넥션을 가져온 뒤에 설정되기 때문에
+ *  ReplicaRoutingTransactionManager가 트랜잭션을 시작하는 동안에만 readOnly 여부를 알려준다.
+ *  -> 트랜잭션 없이 가져가는 커넥션과 readOnly가 아닌 트랜잭션은 항상 primary
+ * */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ReadYourWrites readYourWrites;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    ReadYourWrites readYourWrites, Duration healthCheckInterval) {
+        this.primary = primary;
+        this.readYourWrites = readYourWrites;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     *  트랜잭션을 시작하면서 커넥션을 가져오는 동안 readOnly 여부를 설정한다.
+     *  반환한 이전 값은 restoreRouting 으로 되돌린다. (REQUIRES_NEW 처럼 트랜잭션 안에서 새 트랜잭션을 시작하는 경우)
+     * */
+    static Boolean routeReadOnly(boolean readOnly) {
+        Boolean previous = READ_ONLY.get();
+        READ_ONLY.set(readOnly);
+        return previous;
+    }
+
+    static void restoreRouting(Boolean previous) {
+        if (previous == null) {
+            READ_ONLY.remove();
+        } else {
+            READ_ONLY.set(previous);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    // getConnection()과 같은 곳으로 보내고 넘겨받은 계정으로 연결한다.
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection route(ConnectionSource source) throws SQLException {
+        if (!Boolean.TRUE.equals(READ_ONLY.get()) || readYourWrites.isPinned() || readYourWrites.isPrimaryScope()) {
+            return source.getConnection(primary);
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                return source.getConnection(replica.dataSource);
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+        log.debug("No healthy replica, routing read-only connection to primary");
+        return source.getConnection(primary);
+    }
+
+    // replica 이름 -> 정상 여부
+    public Map<String, Boolean> getReplicaStatus() {
+        Map<String, Boolean> status = new LinkedHashMap<>();
+        replicas.forEach(replica -> status.put(replica.name, replica.healthy));
+        return Collections.unmodifiableMap(status);
+    }
+
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (connection.isValid(1)) {
+                    if (!replica.healthy) {
+                        log.info("Replica {} is back up", replica.name);
+                    }
+                    replica.healthy = true;
+                } else {
+                    markDown(replica, null);
+                }
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    private void markDown(Replica replica, SQLException cause) {
+        if (replica.healthy) {
+            log.warn("Replica {} is down, routing its reads to other replicas / primary", replica.name, cause);
+        }
+        replica.healthy = false;
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            closeQuietly(replica.dataSource);
+        }
+        closeQuietly(primary);
+    }
+
+    private static void closeQuietly(DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) dataSource).close();
+            } catch (Exception e) {
+                log.warn("Failed to close data source", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection getConnection(DataSource dataSource) throws SQLException;
+    }
+
+    private static class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package study.querydsl.respository.support;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/*
+ *  JpaTransactionManager는 트랜잭션을 시작할 때(doBegin) 커넥션을 가져온다.
+ *  -> 그동안만 readOnly 여부를 ReplicaRoutingDataSource에 알려서 replica / primary를 고르게 한다.
+ *  이미 시작된 트랜잭션에 참여하는 경우에는 바깥 트랜잭션의 커넥션을 그대로 사용한다.
+ * */
+public class ReplicaRoutingTransactionManager extends JpaTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        Boolean previous = ReplicaRoutingDataSource.routeReadOnly(definition.isReadOnly());
+        try {
+            super.doBegin(transaction, definition);
+        } finally {
+            ReplicaRoutingDataSource.restoreRouting(previous);
+        }
+    }
+}
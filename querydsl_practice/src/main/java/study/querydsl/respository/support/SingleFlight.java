@@ -0,0 +1,148 @@
+package study.querydsl.respository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+ *  같은 키의 조회가 동시에 들어오면 먼저 온 호출만 실행하고 나머지는 그 결과를 함께 받는다. (single-flight)
+ *  -> 트래픽이 몰릴 때 같은 검색 조건 / 페이지의 쿼리가 한 번만 실행된다.
+ *
+ *  - 실행 중인 호출은 ConcurrentHashMap에 키별로 하나 (putIfAbsent / remove(key, value) -> 락을 잡지 않는다.)
+ *  - 키마다 deadline 하나 -> 실행을 시작할 때 정해지고, 나중에 붙은 호출도 같은 deadline까지만 기다린다.
+ *    deadline이 지나면 직접 실행한 호출과 기다리던 호출이 모두 TimeoutException으로 끝나고 키가 비워져서 다음 호출은 새로 실행된다.
+ *    (실행 중인 쿼리는 중단하지 않는다.)
+ *  - 결과 객체는 함께 받은 호출들이 공유한다. -> 받은 쪽에서 값을 바꾸면 안 된다.
+ *  - read-your-writes 로 primary에 고정된 세션은 다른 세션과 결과를 공유하지 않고 항상 직접 실행한다.
+ *  - readPrimary 범위의 호출은 replica에서 읽을 수 있는 실행과 섞이지 않도록 키를 나눈다.
+ *  - 실행은 먼저 온 요청의 StatementCounter 범위가 아니라 따로 센 뒤, 결과를 받는 요청마다 범위에 더하고 예산을 검사한다.
+ *    -> 한 요청의 예산 초과가 함께 기다린 다른 요청을 실패시키지 않는다.
+ *    대신 statement-budget.mode=reject 여도 실행 중에는 SQL을 미리 막지 않는다. 실행이 끝난 뒤 결과를 받는 시점에 검사해서
+ *    예산을 넘은 요청만 StatementBudgetExceededException으로 끝난다. (이미 실행된 SQL은 되돌리지 않는다.)
+ *    -> reject로 SQL 실행 자체를 막아야 한다면 querydsl.single-flight.enabled=false 로 끈다.
+ *
+ *  메트릭
+ *  - querydsl.single-flight.calls     : 호출 수 (result=executed / coalesced)
+ *  - querydsl.single-flight.timeouts  : deadline이 지나서 끝난 실행 수
+ *  - querydsl.single-flight.in-flight : 실행 중인 키의 수
+ * */
+@Component
+public class SingleFlight {
+
+    private final Map<Object, Flight<?>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final ReadYourWrites readYourWrites;
+    private final StatementCounter statementCounter;
+    private final boolean enabled;
+    private final long timeoutNanos;
+
+    public SingleFlight(MeterRegistry meterRegistry,
+                        ReadYourWrites readYourWrites,
+                        StatementCounter statementCounter,
+                        @Value("${querydsl.single-flight.enabled:true}") boolean enabled,
+                        @Value("${querydsl.single-flight.timeout:10s}") Duration timeout) {
+        this.meterRegistry = meterRegistry;
+        this.readYourWrites = readYourWrites;
+        this.statementCounter = statementCounter;
+        this.enabled = enabled;
+        this.timeoutNanos = timeout.toNanos();
+        Gauge.builder("querydsl.single-flight.in-flight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    /*
+     *  name : 메트릭 태그 (리포지토리 메서드 이름)
+     *  key  : 같은 결과를 돌려주는 호출이면 equals가 같아야 한다. (검색 값을 정규화해서 만든다.)
+     *         결과에 데이터 버전(ETag)을 붙인다면 조회 전에 읽은 버전도 넣는다. -> 변경 이전에 시작된 실행을 함께 받지 않는다.
+     * */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String name, Object key, Supplier<CompletableFuture<T>> call) {
+        if (!enabled || readYourWrites.isPinned()) {
+            return call.get();
+        }
+        Object flightKey = readYourWrites.isPrimaryScope() ? Arrays.asList("primary", key) : key;
+
+        StatementCounts callerCounts = statementCounter.currentCounts();
+        Flight<T> flight = new Flight<>();
+        flight.published = flight.result.whenComplete((result, e) -> inFlight.remove(flightKey, flight));
+        Flight<T> existing = (Flight<T>) inFlight.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            counter(name, "coalesced").increment();
+            return charged(existing, callerCounts);
+        }
+
+        counter(name, "executed").increment();
+        // deadline이 지나면 결과를 TimeoutException으로 끝낸다. -> 함께 받는 호출이 모두 끝나고 키가 비워진다.
+        flight.result.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS).whenComplete((result, e) -> {
+            if (e instanceof TimeoutException) {
+                meterRegistry.counter("querydsl.single-flight.timeouts", "name", name).increment();
+            }
+        });
+        try (StatementCounter.Scope scope = statementCounter.startDetached()) {
+            flight.counts = scope.getCounts();
+            call.get().whenComplete((result, e) -> {
+                if (e != null) {
+                    flight.result.completeExceptionally(e);
+                } else {
+                    flight.result.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+        }
+        return charged(flight, callerCounts);
+    }
+
+    /*
+     *  실행이 끝나면 실행의 SQL 수를 호출한 요청의 범위에 더한다. -> 예산을 넘으면 이 호출만 StatementBudgetExceededException
+     *  기다리는 쪽에서 cancel / complete 해도 다른 호출에 영향이 없도록 새 future를 넘긴다.
+     * */
+    private <T> CompletableFuture<T> charged(Flight<T> flight, StatementCounts callerCounts) {
+        if (callerCounts == null) {
+            return flight.published.copy();
+        }
+        CompletableFuture<T> charged = new CompletableFuture<>();
+        flight.published.whenComplete((result, e) -> {
+            try {
+                callerCounts.addShared(flight.counts);
+            } catch (StatementBudgetExceededException exceeded) {
+                if (e == null) {
+                    charged.completeExceptionally(exceeded);
+                    return;
+                }
+            }
+            if (e != null) {
+                charged.completeExceptionally(e);
+            } else {
+                charged.complete(result);
+            }
+        });
+        return charged;
+    }
+
+    private Counter counter(String name, String result) {
+        return meterRegistry.counter("querydsl.single-flight.calls", "name", name, "result", result);
+    }
+
+    /*
+     *  result    : 실행 결과
+     *  counts    : 실행에서 나간 SQL 수 (결과를 받는 요청마다 더한다.)
+     *  published : 정리(키 제거, 메트릭)가 끝난 뒤 완료된다. -> 호출한 쪽은 이것의 복사본을 받는다.
+     *              (결과를 받았을 때는 이미 키가 비워져 있어서 바로 다시 호출하면 새로 실행된다.)
+     * */
+    private static final class Flight<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private CompletableFuture<T> published;
+        private StatementCounts counts;
+    }
+}
@@ -0,0 +1,34 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.JPQLQuery;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  전체 개수가 필요 없는 화면(무한 스크롤)을 위한 Slice -> count 쿼리를 실행하지 않는다.
+ *  pageSize + 1 개를 조회해서 하나가 더 있으면 다음 페이지가 있다고 판단하고, 더 가져온 하나는 버린다.
+ * */
+public final class SliceQuery {
+
+    private SliceQuery() {
+    }
+
+    public static <T> Slice<T> fetch(JPQLQuery<T> query, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.fetch(), pageable, false);
+        }
+
+        int pageSize = pageable.getPageSize();
+        List<T> content = query
+                .offset(pageable.getOffset())
+                .limit(pageSize + 1L)
+                .fetch();
+
+        boolean hasNext = content.size() > pageSize;
+        return new SliceImpl<>(hasNext ? new ArrayList<>(content.subList(0, pageSize)) : content, pageable, hasNext);
+    }
+}
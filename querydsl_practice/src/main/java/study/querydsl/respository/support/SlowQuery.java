@@ -0,0 +1,36 @@
+package study.querydsl.respository.support;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/*
+ *  임계치를 넘은 SQL 한 건
+ *  plan은 EXPLAIN이 별도의 스레드에서 끝난 뒤에 채워진다. (그 전에는 null)
+ * */
+@Getter
+public class SlowQuery {
+
+    private final String sql;
+    private final String boundSql;
+    private final long elapsedMillis;
+    private final LocalDateTime executedAt;
+    private volatile String plan;
+
+    SlowQuery(String sql, String boundSql, long elapsedMillis, LocalDateTime executedAt) {
+        this.sql = sql;
+        this.boundSql = boundSql;
+        this.elapsedMillis = elapsedMillis;
+        this.executedAt = executedAt;
+    }
+
+    void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    // H2 : /* PUBLIC.MEMBER.tableScan */, PostgreSQL : Seq Scan
+    public boolean isFullScan() {
+        String plan = this.plan;
+        return plan != null && (plan.contains("tableScan") || plan.contains("Seq Scan"));
+    }
+}
@@ -0,0 +1,26 @@
+package study.querydsl.respository.support;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/*
+ *  p6spy-spring-boot-starter는 JdbcEventListener 빈을 DataSource에 자동으로 등록한다.
+ *  모든 execute 이후에 호출되기 때문에 임계치 비교만 하고, 나머지는 SlowQueryLog에 맡긴다.
+ * */
+@Component
+@RequiredArgsConstructor
+public class SlowQueryListener extends SimpleJdbcEventListener {
+
+    private final SlowQueryLog slowQueryLog;
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (slowQueryLog.isSlow(timeElapsedNanos)) {
+            slowQueryLog.record(statementInformation.getSql(), statementInformation.getSqlWithValues(), timeElapsedNanos);
+        }
+    }
+}
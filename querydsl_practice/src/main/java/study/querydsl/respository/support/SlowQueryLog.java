@@ -0,0 +1,129 @@
+package study.querydsl.respository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  실행 시간이 querydsl.slow-query.threshold 를 넘은 SQL을 최근 capacity 개까지만 보관한다. -> /actuator/slowqueries
+ *  select 문은 같은 DataSource로 EXPLAIN 을 실행해서 실행 계획도 함께 보관한다.
+ *  - EXPLAIN 은 쿼리를 실행한 스레드가 아닌 별도의 스레드에서 실행한다. -> 느린 쿼리가 더 느려지지 않는다.
+ *  - 바인딩 값이 들어간 SQL로 EXPLAIN 하기 때문에 검색 조건 조합별로 인덱스를 타는지 확인할 수 있다.
+ *  - "EXPLAIN <sql>" 을 지원하는 DB(H2, MySQL, PostgreSQL 등)만 실행 계획이 남고, 나머지는 실패 메시지가 남는다.
+ * */
+@Slf4j
+@Component
+public class SlowQueryLog {
+
+    private static final String EXPLAIN = "EXPLAIN ";
+
+    // DataSource는 p6spy가 이 빈(리스너)을 가지고 만들기 때문에 필요할 때 가져온다.
+    private final ObjectProvider<DataSource> dataSource;
+    private final long thresholdNanos;
+    private final int capacity;
+    private final boolean explain;
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final ThreadPoolExecutor explainExecutor;
+
+    public SlowQueryLog(ObjectProvider<DataSource> dataSource,
+                        @Value("${querydsl.slow-query.threshold:200ms}") Duration threshold,
+                        @Value("${querydsl.slow-query.capacity:100}") int capacity,
+                        @Value("${querydsl.slow-query.explain:true}") boolean explain) {
+        this.dataSource = dataSource;
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+        this.explain = explain;
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(capacity), new CustomizableThreadFactory("slow-query-explain-"));
+        this.explainExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    public void record(String sql, String boundSql, long elapsedNanos) {
+        // EXPLAIN 자신은 기록하지 않는다.
+        if (sql == null || startsWithIgnoreCase(sql, EXPLAIN)) {
+            return;
+        }
+
+        SlowQuery slowQuery = new SlowQuery(sql, boundSql, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), LocalDateTime.now());
+        log.warn("Slow query ({} ms): {}", slowQuery.getElapsedMillis(), boundSql);
+        synchronized (slowQueries) {
+            slowQueries.addFirst(slowQuery);
+            if (slowQueries.size() > capacity) {
+                slowQueries.removeLast();
+            }
+        }
+
+        if (explain && startsWithIgnoreCase(boundSql, "select")) {
+            try {
+                explainExecutor.execute(() -> slowQuery.setPlan(explain(boundSql)));
+            } catch (RejectedExecutionException e) {
+                slowQuery.setPlan("EXPLAIN skipped: too many slow queries");
+            }
+        }
+    }
+
+    // 최근에 실행된 순서
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    public void clear() {
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    private String explain(String boundSql) {
+        try (Connection connection = dataSource.getObject().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(EXPLAIN + boundSql)) {
+            int columnCount = resultSet.getMetaData().getColumnCount();
+            StringBuilder plan = new StringBuilder();
+            while (resultSet.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    plan.append(i > 1 ? " | " : "").append(resultSet.getString(i));
+                }
+                plan.append('\n');
+            }
+            return plan.toString().trim();
+        } catch (SQLException | RuntimeException e) {
+            log.debug("EXPLAIN failed: {}", boundSql, e);
+            return "EXPLAIN failed: " + e.getMessage();
+        }
+    }
+
+    private static boolean startsWithIgnoreCase(String sql, String prefix) {
+        String trimmed = sql.stripLeading();
+        return trimmed.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,19 @@
+package study.querydsl.respository.support;
+
+/*
+ *  범위(StatementCounter.Scope)의 SQL 수가 예산을 넘었을 때
+ *  - reject 모드 : 예산을 넘는 SQL을 실행하기 직전에 던진다. -> SQL은 실행되지 않는다.
+ *  - 테스트     : Scope.assertStatementsAtMost 등으로 검증할 때 던진다.
+ * */
+public class StatementBudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StatementBudgetExceededException(long maxStatements, StatementCounts counts) {
+        this("Expected at most " + maxStatements + " statements: " + counts);
+    }
+
+    public StatementBudgetExceededException(String message) {
+        super(message);
+    }
+}
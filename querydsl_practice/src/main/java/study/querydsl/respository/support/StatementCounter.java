@@ -0,0 +1,203 @@
+package study.querydsl.respository.support;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+
+/*
+ *  범위(Scope)마다 실행된 SQL 수, 로딩된 엔티티 수, 초기화된 컬렉션 수를 센다. -> N+1 문제를 찾거나 테스트에서 SQL 수를 검증한다.
+ *
+ *  - SQL : p6spy JdbcEventListener -> execute 직전에 센다. (batch는 executeBatch 한 번이 1건)
+ *  - 엔티티 로딩 / 컬렉션 초기화 : Hibernate PostLoad / InitializeCollection 이벤트
+ *
+ *  범위는 스레드에 바인딩된다. 다른 스레드에서 실행할 작업은 propagate로 넘겨준다. (AsyncQueryExecutor, ParallelCountExecutor)
+ *  (작업으로 넘길 수 없는 곳은 attach로 직접 연결한다. -> StreamingResponseBody)
+ *  범위 안에서 다시 시작한 범위의 수는 바깥 범위에도 더해진다.
+ *  여러 요청이 함께 기다리는 실행(SingleFlight)은 startDetached로 따로 센 뒤 요청마다 더한다.
+ *
+ *  ex) 테스트
+ *  try (StatementCounter.Scope scope = statementCounter.start()) {
+ *      memberRepository.search(condition);
+ *      scope.assertStatementsAtMost(1);
+ *  }
+ * */
+@Component
+public class StatementCounter extends SimpleJdbcEventListener
+        implements PostLoadEventListener, InitializeCollectionEventListener, SmartInitializingSingleton {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ThreadLocal<StatementCounts> current = new ThreadLocal<>();
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+
+    // p6spy가 DataSource를 만들 때 이 빈을 찾기 때문에 EntityManagerFactory는 모든 빈이 만들어진 뒤에 가져온다.
+    public StatementCounter(ObjectProvider<EntityManagerFactory> entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        EventListenerRegistry registry = entityManagerFactory.getObject().unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_LOAD, this);
+        registry.appendListeners(EventType.INIT_COLLECTION, this);
+    }
+
+    public Scope start() {
+        return start(StatementCounts.UNLIMITED, false);
+    }
+
+    /*
+     *  maxStatements 를 넘는 SQL이 실행되려고 하면 reject=true 일 때 실행하지 않고 StatementBudgetExceededException
+     *  (실행 전에 검사하기 때문에 범위 밖의 SQL은 실행되지 않는다.)
+     * */
+    public Scope start(long maxStatements, boolean reject) {
+        StatementCounts parent = current.get();
+        StatementCounts counts = new StatementCounts(parent, maxStatements, reject);
+        current.set(counts);
+        return new Scope(counts, parent);
+    }
+
+    /*
+     *  바깥 범위와 상관없는 범위를 시작한다. -> 이 범위의 SQL은 바깥 범위에 더해지지 않고 예산도 검사하지 않는다.
+     *  끝난 뒤 StatementCounts.addShared로 필요한 범위에 더한다.
+     * */
+    public Scope startDetached() {
+        StatementCounts previous = current.get();
+        StatementCounts counts = new StatementCounts(null, StatementCounts.UNLIMITED, false);
+        current.set(counts);
+        return new Scope(counts, previous);
+    }
+
+    /*
+     *  다른 스레드에서 시작한 범위(currentCounts)를 현재 스레드에 연결한다. (null 이면 범위 없이)
+     *  반환된 Scope를 닫으면 현재 스레드의 원래 범위로 되돌린다.
+     * */
+    public Scope attach(StatementCounts counts) {
+        StatementCounts previous = current.get();
+        set(counts);
+        return new Scope(counts, previous);
+    }
+
+    // 현재 스레드의 범위 (없으면 null)
+    public StatementCounts currentCounts() {
+        return current.get();
+    }
+
+    /*
+     *  다른 스레드에서 실행할 작업에 현재 범위를 넘겨준다.
+     *  작업이 끝나면 실행한 스레드의 원래 범위로 되돌린다.
+     * */
+    public <T> Supplier<T> propagate(Supplier<T> task) {
+        StatementCounts counts = current.get();
+        if (counts == null) {
+            return task;
+        }
+        return () -> {
+            StatementCounts previous = current.get();
+            current.set(counts);
+            try {
+                return task.get();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    @Override
+    public void onBeforeAnyExecute(StatementInformation statementInformation) {
+        StatementCounts counts = current.get();
+        if (counts != null) {
+            counts.statementExecuting(statementInformation.getSql());
+        }
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        StatementCounts counts = current.get();
+        if (counts != null) {
+            counts.entityLoaded();
+        }
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        StatementCounts counts = current.get();
+        if (counts != null) {
+            counts.collectionInitialized();
+        }
+    }
+
+    private void set(StatementCounts counts) {
+        if (counts == null) {
+            current.remove();
+        } else {
+            current.set(counts);
+        }
+    }
+
+    public class Scope implements AutoCloseable {
+
+        private final StatementCounts counts;
+        private final StatementCounts parent;
+
+        private Scope(StatementCounts counts, StatementCounts parent) {
+            this.counts = counts;
+            this.parent = parent;
+        }
+
+        public StatementCounts getCounts() {
+            return counts;
+        }
+
+        public long getStatements() {
+            return counts.getStatements();
+        }
+
+        public long getEntityLoads() {
+            return counts.getEntityLoads();
+        }
+
+        public long getCollectionInitializations() {
+            return counts.getCollectionInitializations();
+        }
+
+        public void assertStatementsAtMost(long maxStatements) {
+            if (counts.getStatements() > maxStatements) {
+                throw new StatementBudgetExceededException(maxStatements, counts);
+            }
+        }
+
+        public void assertEntityLoadsAtMost(long maxEntityLoads) {
+            if (counts.getEntityLoads() > maxEntityLoads) {
+                throw new StatementBudgetExceededException(
+                        "Expected at most " + maxEntityLoads + " entity loads: " + counts);
+            }
+        }
+
+        public void assertCollectionInitializationsAtMost(long maxCollectionInitializations) {
+            if (counts.getCollectionInitializations() > maxCollectionInitializations) {
+                throw new StatementBudgetExceededException(
+                        "Expected at most " + maxCollectionInitializations + " collection initializations: " + counts);
+            }
+        }
+
+        // 범위를 시작하기 전의 범위로 되돌린다.
+        @Override
+        public void close() {
+            set(parent);
+        }
+    }
+}
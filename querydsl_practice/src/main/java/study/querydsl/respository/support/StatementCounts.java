@@ -0,0 +1,134 @@
+package study.querydsl.respository.support;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ *  StatementCounter 범위 하나의 집계
+ *  여러 스레드에서 함께 더해질 수 있다. (propagate로 넘긴 비동기 작업, addShared로 더하는 공유된 실행)
+ *
+ *  같은 SQL(바인딩 값 제외)이 몇 번 실행됐는지도 센다. -> 같은 SQL이 여러 번 반복되면 N+1 을 의심할 수 있다.
+ *  서로 다른 SQL은 MAX_DISTINCT_SQL 개까지만 기록한다.
+ * */
+public class StatementCounts {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final int MAX_DISTINCT_SQL = 100;
+
+    private final StatementCounts parent;
+    private final long maxStatements;
+    private final boolean reject;
+
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong entityLoads = new AtomicLong();
+    private final AtomicLong collectionInitializations = new AtomicLong();
+    private final Map<String, AtomicInteger> executionsBySql = new ConcurrentHashMap<>();
+
+    StatementCounts(StatementCounts parent, long maxStatements, boolean reject) {
+        this.parent = parent;
+        this.maxStatements = maxStatements;
+        this.reject = reject;
+    }
+
+    // reject 범위에서 maxStatements 를 넘으면 SQL을 실행하지 않도록 예외를 던진다. (바깥 범위부터 검사)
+    void statementExecuting(String sql) {
+        if (parent != null) {
+            parent.statementExecuting(sql);
+        }
+        long executed = statements.incrementAndGet();
+        AtomicInteger executions = executionsBySql.get(sql);
+        if (executions == null && executionsBySql.size() < MAX_DISTINCT_SQL) {
+            executions = executionsBySql.computeIfAbsent(sql, key -> new AtomicInteger());
+        }
+        if (executions != null) {
+            executions.incrementAndGet();
+        }
+
+        if (reject && executed > maxStatements) {
+            throw new StatementBudgetExceededException(maxStatements, this);
+        }
+    }
+
+    /*
+     *  여러 범위가 함께 기다린 실행(StatementCounter.startDetached)의 수를 더한다.
+     *  reject 범위에서 maxStatements 를 넘으면 예외를 던진다. (SQL은 이미 실행되었고, 이 범위의 결과만 실패시킨다.)
+     * */
+    public void addShared(StatementCounts shared) {
+        if (parent != null) {
+            parent.addShared(shared);
+        }
+        long executed = statements.addAndGet(shared.getStatements());
+        entityLoads.addAndGet(shared.getEntityLoads());
+        collectionInitializations.addAndGet(shared.getCollectionInitializations());
+        shared.executionsBySql.forEach((sql, sharedExecutions) -> {
+            AtomicInteger executions = executionsBySql.get(sql);
+            if (executions == null && executionsBySql.size() < MAX_DISTINCT_SQL) {
+                executions = executionsBySql.computeIfAbsent(sql, key -> new AtomicInteger());
+            }
+            if (executions != null) {
+                executions.addAndGet(sharedExecutions.get());
+            }
+        });
+
+        if (reject && executed > maxStatements) {
+            throw new StatementBudgetExceededException(maxStatements, this);
+        }
+    }
+
+    void entityLoaded() {
+        if (parent != null) {
+            parent.entityLoaded();
+        }
+        entityLoads.incrementAndGet();
+    }
+
+    void collectionInitialized() {
+        if (parent != null) {
+            parent.collectionInitialized();
+        }
+        collectionInitializations.incrementAndGet();
+    }
+
+    public long getStatements() {
+        return statements.get();
+    }
+
+    public long getEntityLoads() {
+        return entityLoads.get();
+    }
+
+    public long getCollectionInitializations() {
+        return collectionInitializations.get();
+    }
+
+    public long getMaxStatements() {
+        return maxStatements;
+    }
+
+    public boolean isOverBudget() {
+        return statements.get() > maxStatements;
+    }
+
+    // minExecutions 번 이상 실행된 SQL -> 실행 횟수 (많이 실행된 순서)
+    public Map<String, Integer> getRepeatedStatements(int minExecutions) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        executionsBySql.entrySet().stream()
+                .filter(entry -> entry.getValue().get() >= minExecutions)
+                .sorted((a, b) -> Integer.compare(b.getValue().get(), a.getValue().get()))
+                .forEach(entry -> repeated.put(entry.getKey(), entry.getValue().get()));
+        return repeated;
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Integer> repeated = getRepeatedStatements(2);
+        return "statements=" + statements.get()
+                + ", entityLoads=" + entityLoads.get()
+                + ", collectionInitializations=" + collectionInitializations.get()
+                + (repeated.isEmpty() ? "" : ", repeated=" + repeated.entrySet().iterator().next());
+    }
+}
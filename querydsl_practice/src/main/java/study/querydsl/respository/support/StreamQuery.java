@@ -0,0 +1,39 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.jpa.QueryHints;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+ *  content를 List로 모으지 않고 DB 커서에서 한 건씩 꺼내서 rows에 넘긴다. (PageJsonWriter로 바로 응답에 쓸 때)
+ *  반환하는 List는 건수만 맞춘 자리표시자(null) -> Page의 totalElements, numberOfElements 계산에만 사용된다.
+ *
+ *  커서가 열려있는 동안 트랜잭션(커넥션)이 필요하다.
+ *  원본 쿼리에 힌트가 남지 않도록 복제본으로 실행한다. -> 같은 content 쿼리로 count 쿼리를 만들 수 있다.
+ * */
+public final class StreamQuery {
+
+    private static final int FETCH_SIZE = 1000;
+
+    private StreamQuery() {
+    }
+
+    public static <T> List<T> forEach(JPAQuery<T> query, Consumer<? super T> rows) {
+        int count = 0;
+        try (Stream<T> stream = query.clone()
+                .setHint(QueryHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .stream()) {
+            Iterator<T> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                rows.accept(iterator.next());
+                count++;
+            }
+        }
+        return Collections.nCopies(count, null);
+    }
+}
@@ -0,0 +1,153 @@
+package study.querydsl.controller;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  v1 ~ v3 는 AsyncQueryExecutor의 스레드(별도의 커넥션)에서 조회한다. -> 커밋된 데이터로 테스트한다.
+ *  실행된 SQL 수는 Hibernate 통계로 센다. (비동기 스레드에서 실행된 SQL도 포함된다.)
+ * */
+@SpringBootTest
+@AutoConfigureMockMvc
+class MemberControllerTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            for (int i = 0; i < 3; i++) {
+                em.persist(new Member("member" + i, 10 + i, teamA));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    // size + 1 이 넘치지 않고 max-page-size 로 줄어든다.
+    @Test
+    public void keysetSizeIsClamped() throws Exception {
+        mockMvc.perform(get("/v1/members/keyset").param("size", String.valueOf(Integer.MAX_VALUE)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(2000))
+                .andExpect(jsonPath("$.content.length()").value(3));
+    }
+
+    @Test
+    public void invalidKeysetRequestIsBadRequest() throws Exception {
+        mockMvc.perform(get("/v1/members/keyset").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/members/keyset").param("cursor", "!!.??"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/members/keyset").param("sort", "username,desc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void invalidSliceSortIsBadRequest() throws Exception {
+        mockMvc.perform(get("/v4/members").param("sort", "unknown,desc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // 같은 ETag -> 쿼리 없이 304, 벌크 연산으로 데이터가 바뀌면 같은 ETag라도 다시 조회해서 새 ETag로 200
+    @Test
+    public void etagIsNotModifiedUntilDataChanges() throws Exception {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        String etag = fetch(get("/v1/members").param("teamName", "teamA"))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+
+        long statements = statistics.getPrepareStatementCount();
+        mockMvc.perform(get("/v1/members").param("teamName", "teamA").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+
+        transactionTemplate.executeWithoutResult(status -> queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .execute());
+
+        String changed = fetch(get("/v1/members").param("teamName", "teamA").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(jsonPath("$[*].age", containsInAnyOrder(11, 12, 13)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(changed).isNotNull().isNotEqualTo(etag);
+    }
+
+    // 페이지도 ETag의 키에 들어간다. -> 다른 페이지는 같은 ETag로 304가 되지 않는다.
+    @Test
+    public void pageIsPartOfEtag() throws Exception {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        String etag = fetch(get("/v2/members").param("page", "0").param("size", "2"))
+                .andExpect(jsonPath("$.content.length()").value(2))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isNotNull();
+
+        long statements = statistics.getPrepareStatementCount();
+        mockMvc.perform(get("/v2/members").param("page", "0").param("size", "2").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+
+        String nextPage = fetch(get("/v2/members").param("page", "1").param("size", "2").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(nextPage).isNotNull().isNotEqualTo(etag);
+    }
+
+    // 비동기 요청을 끝까지 처리하고 200인지 확인한다.
+    private ResultActions fetch(MockHttpServletRequestBuilder builder) throws Exception {
+        MvcResult started = mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,77 @@
+package study.querydsl.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+ *  스트리밍으로 쓴 JSON이 Page를 Jackson으로 직렬화한 JSON(v2 / v3 응답)과 같은지 비교한다.
+ *  첫 페이지, 중간 페이지, 마지막 페이지, 범위를 벗어난 페이지 -> total을 구하는 방법이 모두 다르다.
+ * */
+@SpringBootTest
+@Transactional
+class PageJsonWriterTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    PageJsonWriter pageJsonWriter;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("member" + i, 10 + i, teamA));
+        }
+        em.persist(new Member("noTeam", 50));
+    }
+
+    @Test
+    public void sameJsonAsPage() throws Exception {
+        MemberSearchCondition teamCondition = new MemberSearchCondition();
+        teamCondition.setTeamName("teamA");
+
+        for (MemberSearchCondition condition : new MemberSearchCondition[]{new MemberSearchCondition(), teamCondition}) {
+            for (PageRequest pageRequest : new PageRequest[]{
+                    PageRequest.of(0, 2), PageRequest.of(1, 2), PageRequest.of(2, 2), PageRequest.of(5, 2), PageRequest.of(0, 20)}) {
+
+                assertThat(streamed(rows -> memberRepository.streamPageSimple(condition, pageRequest, rows)))
+                        .isEqualTo(objectMapper.writeValueAsString(memberRepository.searchPageSimple(condition, pageRequest)));
+                assertThat(streamed(rows -> memberRepository.streamPageComplex(condition, pageRequest, rows)))
+                        .isEqualTo(objectMapper.writeValueAsString(memberRepository.searchPageComplex(condition, pageRequest)));
+            }
+        }
+    }
+
+    private String streamed(Function<Consumer<MemberTeamDto>, Page<?>> query) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pageJsonWriter.write(MemberTeamDto.class, query).writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package study.querydsl.respository;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.support.BulkChunkOptions;
+import study.querydsl.respository.support.BulkProgress;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  청크마다 별도의 트랜잭션으로 커밋되기 때문에 커밋된 데이터로 테스트해야 한다.
+ * */
+@SpringBootTest
+class ChunkedBulkTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            for (int i = 0; i < 25; i++) {
+                em.persist(new Member("member" + i, i, teamA));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void chunkedUpdateTest() {
+        List<BulkProgress> progresses = new ArrayList<>();
+
+        long count = memberTestRepository.bulkRenameYoungerThan(12, "비회원",
+                BulkChunkOptions.of(10).throttle(Duration.ofMillis(1)).onProgress(progresses::add));
+
+        assertThat(count).isEqualTo(12);
+        assertThat(progresses).hasSize(3);
+        assertThat(progresses).extracting("chunk").containsExactly(1L, 2L, 3L);
+        assertThat(progresses.get(2).getTotalAffectedRows()).isEqualTo(12);
+        assertThat(progresses).extracting("affectedRows").containsExactly(10L, 2L, 0L);
+
+        Long renamed = transactionTemplate.execute(status -> em
+                .createQuery("select count(m) from Member m where m.username = :username", Long.class)
+                .setParameter("username", "비회원")
+                .getSingleResult());
+        assertThat(renamed).isEqualTo(12);
+    }
+
+    @Test
+    public void chunkedDeleteTest() {
+        long count = memberTestRepository.bulkDeleteOlderThan(18, BulkChunkOptions.of(7));
+
+        assertThat(count).isEqualTo(6);
+        Long remaining = transactionTemplate.execute(status -> em
+                .createQuery("select count(m) from Member m", Long.class)
+                .getSingleResult());
+        assertThat(remaining).isEqualTo(19);
+    }
+}
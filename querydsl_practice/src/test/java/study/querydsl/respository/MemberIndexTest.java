@@ -0,0 +1,159 @@
+package study.querydsl.respository;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StringUtils;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/*
+ *  모든 검색 조건 조합에 대해 인덱스 결과가 전체를 하나씩 확인한 결과와 같은지 비교한다.
+ * */
+class MemberIndexTest {
+
+    private static final String[] USERNAMES = {null, "member0", "member1", "member2", "nobody"};
+    private static final String[] TEAM_NAMES = {null, "teamA", "teamB", "teamC", "nobody"};
+    private static final Integer[] AGES = {null, -1, 0, 15, 30, 45, 60, 100};
+
+    @Test
+    public void sameResultAsFullScan() {
+        List<MemberTeamDto> rows = rows(2000);
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            MemberIndex index = MemberIndex.build(rows, offHeap);
+            assertThat(index.size()).isEqualTo(rows.size());
+
+            for (String username : USERNAMES) {
+                for (String teamName : TEAM_NAMES) {
+                    for (Integer ageGoe : AGES) {
+                        for (Integer ageLoe : AGES) {
+                            MemberSearchCondition condition = condition(username, teamName, ageGoe, ageLoe);
+                            long[] expected = rows.stream()
+                                    .filter(row -> matches(row, condition))
+                                    .mapToLong(MemberTeamDto::getMemberId)
+                                    .sorted()
+                                    .toArray();
+
+                            assertThat(index.memberIds(index.select(condition))).containsExactly(expected);
+                            assertThat(index.count(condition)).hasValue(expected.length);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyIndex() {
+        MemberIndex index = MemberIndex.build(List.of(), true);
+
+        assertThat(index.count(new MemberSearchCondition())).hasValue(0);
+        assertThat(index.count(condition("member1", "teamA", 10, 20))).hasValue(0);
+    }
+
+    @Test
+    public void sameStringHashCodeIsDistinguished() {
+        // "Aa"와 "BB"처럼 String.hashCode가 같은 값도 64비트 해시는 다르다.
+        assertThat(MemberIndex.hash("Aa")).isNotEqualTo(MemberIndex.hash("BB"));
+
+        MemberIndex index = MemberIndex.build(List.of(
+                new MemberTeamDto(1L, "Aa", 10, null, null),
+                new MemberTeamDto(2L, "BB", 20, null, null)), false);
+        assertThat(index.isExact(condition("Aa", null, null, null))).isTrue();
+        assertThat(index.memberIds(index.select(condition("BB", null, null, null)))).containsExactly(2L);
+    }
+
+    // 인덱스에 없는 값이 충돌하지 않은 버킷과 해시만 같으면 그 버킷의 회원을 돌려주지 않는다.
+    @Test
+    public void unindexedValueWithSameHashIsNotMatched() {
+        // 길이를 해시로 사용 -> "Aa"와 "BB"는 같은 버킷, "ccc"는 혼자 있는 버킷
+        MemberIndex index = MemberIndex.build(List.of(
+                new MemberTeamDto(1L, "Aa", 10, null, null),
+                new MemberTeamDto(2L, "BB", 20, null, null),
+                new MemberTeamDto(3L, "ccc", 30, null, null)), false, String::length);
+
+        MemberSearchCondition unindexed = condition("ddd", null, null, null);
+        assertThat(index.isExact(unindexed)).isTrue();
+        assertThat(index.memberIds(index.select(unindexed))).isEmpty();
+        assertThat(index.count(unindexed)).hasValue(0);
+        assertThat(index.count(condition("ccc", null, null, null))).hasValue(1);
+
+        // 충돌한 버킷은 후보만 준다.
+        MemberSearchCondition collided = condition("Aa", null, null, null);
+        assertThat(index.isExact(collided)).isFalse();
+        assertThat(index.memberIds(index.select(collided))).containsExactly(1L, 2L);
+        assertThat(index.count(collided)).isEmpty();
+    }
+
+    // 행은 인덱스의 컬럼에서 다시 만든다. (이름 / 팀이 없는 회원, UTF-8 이름 포함)
+    @Test
+    public void rowsAreReadFromColumns() {
+        List<MemberTeamDto> rows = rows(200);
+        rows.add(new MemberTeamDto(30_000L, "회원", 20, 7L, "팀"));
+
+        for (boolean offHeap : new boolean[]{false, true}) {
+            MemberIndex index = MemberIndex.build(rows, offHeap);
+            for (MemberTeamDto row : rows) {
+                assertThat(index.row(index.position(row.getMemberId()))).isEqualTo(row);
+            }
+
+            long[] expected = rows.stream()
+                    .filter(row -> Objects.equals(row.getTeamId(), 0L))
+                    .mapToLong(MemberTeamDto::getMemberId)
+                    .sorted()
+                    .toArray();
+            assertThat(Arrays.stream(index.positionsOfTeam(0L)).mapToLong(index::memberId).toArray())
+                    .containsExactly(expected);
+            assertThat(index.count(condition("회원", "팀", null, null))).hasValue(1);
+        }
+    }
+
+    // retire 한 뒤에도 읽고 있는 reader가 release 할 때까지는 사용할 수 있고, 그 뒤에는 acquire 할 수 없다.
+    @Test
+    public void releasedAfterRetireAndLastReader() {
+        MemberIndex index = MemberIndex.build(rows(100), true);
+
+        assertThat(index.acquire()).isTrue();
+        index.retire();
+        assertThat(index.count(new MemberSearchCondition())).hasValue(101);
+
+        index.release();
+        assertThat(index.acquire()).isFalse();
+    }
+
+    private static List<MemberTeamDto> rows(int size) {
+        Random random = new Random(42);
+        List<MemberTeamDto> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            long memberId = 10_000L - i * 3L;
+            int team = random.nextInt(4);
+            rows.add(new MemberTeamDto(memberId, "member" + random.nextInt(3), random.nextInt(80),
+                    team == 3 ? null : (long) team, team == 3 ? null : "team" + (char) ('A' + team)));
+        }
+        // 이름 / 팀이 없는 회원
+        rows.add(new MemberTeamDto(20_000L, null, 30, null, null));
+        return rows;
+    }
+
+    private static boolean matches(MemberTeamDto row, MemberSearchCondition condition) {
+        return (!StringUtils.hasText(condition.getUsername()) || Objects.equals(condition.getUsername(), row.getUsername()))
+                && (!StringUtils.hasText(condition.getTeamName()) || Objects.equals(condition.getTeamName(), row.getTeamName()))
+                && (condition.getAgeGoe() == null || row.getAge() >= condition.getAgeGoe())
+                && (condition.getAgeLoe() == null || row.getAge() <= condition.getAgeLoe());
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
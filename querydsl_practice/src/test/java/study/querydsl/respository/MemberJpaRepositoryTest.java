@@ -4,6 +4,8 @@ import static org.assertj.core.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -12,7 +14,9 @@ import study.querydsl.entity.Team;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SpringBootTest
 @Transactional
@@ -24,6 +28,9 @@ class MemberJpaRepositoryTest {
     @Autowired
     MemberJpaRepository memberJpaRepository;
 
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
     @Test
     public void basicTest() {
         Member member = new Member("member1", 10);
@@ -80,4 +87,98 @@ class MemberJpaRepositoryTest {
 
         assertThat(result).extracting("username").containsExactly("member4");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void searchPreparedShapeTest() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        // 같은 조건 조합(shape)이라도 바인딩되는 값이 다르면 결과도 달라야 한다.
+        MemberSearchCondition teamACondition = new MemberSearchCondition();
+        teamACondition.setTeamName("teamA");
+        MemberSearchCondition teamBCondition = new MemberSearchCondition();
+        teamBCondition.setTeamName("teamB");
+
+        assertThat(memberJpaRepository.search(teamACondition)).extracting("username")
+                .containsExactlyInAnyOrder("member1", "member2");
+        assertThat(memberJpaRepository.search(teamBCondition)).extracting("username")
+                .containsExactlyInAnyOrder("member3", "member4");
+        assertThat(memberJpaRepository.searchByBuilder(teamBCondition)).extracting("username")
+                .containsExactlyInAnyOrder("member3", "member4");
+
+        // 다른 조합은 다른 쿼리를 사용한다.
+        MemberSearchCondition ageCondition = new MemberSearchCondition();
+        ageCondition.setAgeLoe(20);
+        assertThat(memberJpaRepository.search(ageCondition)).extracting("username")
+                .containsExactlyInAnyOrder("member1", "member2");
+        assertThat(memberJpaRepository.searchByBuilder(ageCondition)).extracting("username")
+                .containsExactlyInAnyOrder("member1", "member2");
+
+        assertThat(memberJpaRepository.search(new MemberSearchCondition())).hasSize(4);
+    }
+
+    @Test
+    public void searchStreamTest() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> result = new ArrayList<>();
+        long count = memberJpaRepository.searchStream(condition, result::add);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(result).extracting("username").containsExactly("member3", "member4");
+    }
+
+    /*
+     *  /v1/members/export 의 StreamingResponseBody 처럼 트랜잭션이 없는 스레드에서 호출해도
+     *  searchStream이 직접 readOnly 트랜잭션을 열고 커서를 끝까지 읽는다.
+     * */
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void searchStreamWithoutTransactionTest() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("streamTeam");
+            em.persist(team);
+            for (int i = 0; i < 2500; i++) {
+                em.persist(new Member("stream" + i, i % 100, team));
+            }
+        });
+
+        try {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("streamTeam");
+
+            AtomicLong readOnlyRows = new AtomicLong();
+            long count = memberJpaRepository.searchStream(condition, memberTeamDto -> {
+                if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                    readOnlyRows.incrementAndGet();
+                }
+            });
+
+            assertThat(count).isEqualTo(2500);
+            assertThat(readOnlyRows.get()).isEqualTo(2500);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.username like 'stream%'").executeUpdate();
+                em.createQuery("delete from Team t where t.name = 'streamTeam'").executeUpdate();
+            });
+        }
+    }
+}
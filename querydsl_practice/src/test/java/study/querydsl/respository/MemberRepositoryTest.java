@@ -1,19 +1,29 @@
 package study.querydsl.respository;
 
+import com.querydsl.jpa.impl.JPAQueryFactory;
 import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
+import study.querydsl.entity.QTeam;
 import study.querydsl.entity.Team;
+import study.querydsl.respository.support.KeysetPage;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import java.util.List;
 
 
@@ -24,9 +34,18 @@ class MemberRepositoryTest {
     @Autowired
     EntityManager em;
 
+    @Autowired
+    EntityManagerFactory emf;
+
     @Autowired
     MemberRepository memberRepository;
 
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
     @Test
     public void basicTest() {
         Member member = new Member("member1", 10);
@@ -96,6 +115,144 @@ class MemberRepositoryTest {
         assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
     }
 
+    /*
+     *  count 캐시는 커밋 전의 변경이 있는 트랜잭션에서는 사용되지 않는다.
+     *  -> 테스트 트랜잭션 없이 데이터를 커밋해두고, 두 번째 조회에서 count SQL이 실행되지 않는지 확인한다.
+     * */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void searchPageComplexCountTest() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("countCacheTeam");
+            em.persist(team);
+            em.persist(new Member("countCache1", 10, team));
+            em.persist(new Member("countCache2", 20, team));
+            em.persist(new Member("countCache3", 30, team));
+        });
+
+        try {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("countCacheTeam");
+            PageRequest pageRequest = PageRequest.of(0, 2);
+            Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+            long statements = statistics.getPrepareStatementCount();
+            Page<MemberTeamDto> result = memberRepository.searchPageComplex(condition, pageRequest);
+            assertThat(result.getTotalElements()).isEqualTo(3);
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements + 2);
+
+            // 두 번째 조회는 캐시된 count를 사용한다. -> content 쿼리만 실행된다.
+            statements = statistics.getPrepareStatementCount();
+            Page<MemberTeamDto> cached = memberRepository.searchPageComplex(condition, pageRequest);
+            assertThat(cached.getTotalElements()).isEqualTo(3);
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements + 1);
+
+            // 데이터가 추가되면 캐시된 count가 아니라 새로운 count가 나와야 한다.
+            transactionTemplate.executeWithoutResult(status -> em.persist(
+                    new Member("countCache4", 40, queryFactory.selectFrom(QTeam.team)
+                            .where(QTeam.team.name.eq("countCacheTeam"))
+                            .fetchOne())));
+
+            Page<MemberTeamDto> afterInsert = memberRepository.searchPageComplex(condition, pageRequest);
+            assertThat(afterInsert.getTotalElements()).isEqualTo(4);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                queryFactory.delete(QMember.member)
+                        .where(QMember.member.username.startsWith("countCache"))
+                        .execute();
+                queryFactory.delete(QTeam.team)
+                        .where(QTeam.team.name.eq("countCacheTeam"))
+                        .execute();
+            });
+        }
+    }
+
+    @Test
+    public void searchSliceTest() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamA));
+        em.persist(new Member("member4", 40, teamA));
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 3));
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+        assertThat(first.hasNext()).isTrue();
+        // count 쿼리 없이 content 쿼리 한 번만 실행된다.
+        assertThat(statistics.getPrepareStatementCount() - statements).isEqualTo(1);
+
+        Slice<MemberTeamDto> second = memberRepository.searchSlice(condition, first.nextPageable());
+
+        assertThat(second.getContent()).extracting("username").containsExactly("member4");
+        assertThat(second.hasNext()).isFalse();
+    }
+
+    // Pageable의 sort를 적용하고, 같은 값은 member.id 순서로 이어진다.
+    @Test
+    public void searchSliceSortTest() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        em.persist(new Member("member1", 20, teamA));
+        em.persist(new Member("member2", 10, teamA));
+        em.persist(new Member("member3", 20, teamA));
+        em.persist(new Member("member4", 30, teamA));
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age")));
+        Slice<MemberTeamDto> second = memberRepository.searchSlice(condition, first.nextPageable());
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member4", "member1");
+        assertThat(second.getContent()).extracting("username").containsExactly("member3", "member2");
+
+        assertThatThrownBy(() -> memberRepository.searchSlice(condition, PageRequest.of(0, 2, Sort.by("unknown"))))
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void searchKeysetTest() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+
+        Member member3 = new Member("member3", 30, teamB);
+        Member member4 = new Member("member4", 40, teamB);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.persist(member4);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        Sort sort = Sort.by(Sort.Direction.DESC, "age");
+
+        KeysetPage<MemberTeamDto> first = memberRepository.searchKeyset(condition, null, 3, sort);
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member4", "member3", "member2");
+        assertThat(first.isHasNext()).isTrue();
+
+        KeysetPage<MemberTeamDto> second = memberRepository.searchKeyset(condition, first.getNextCursor(), 3, sort);
+
+        assertThat(second.getContent()).extracting("username").containsExactly("member1");
+        assertThat(second.isHasNext()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
     @Test
     public void querydslPredicateExecutorTest() {
         Team teamA = new Team("teamA");
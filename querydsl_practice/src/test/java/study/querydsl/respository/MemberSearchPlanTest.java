@@ -0,0 +1,131 @@
+package study.querydsl.respository;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.support.SlowQuery;
+import study.querydsl.respository.support.SlowQueryLog;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+ *  검색 조건 조합(shape)마다 실제로 실행된 SQL을 H2 EXPLAIN 으로 확인해서 테이블 전체를 읽지 않는지 검사한다.
+ *  실행된 SQL은 SlowQueryLog로 가져온다. (임계치 0 -> 모든 SQL이 기록된다)
+ *  인덱스를 지우거나 조건/조인을 바꿔서 tableScan이 다시 생기면 실패한다.
+ * */
+@SpringBootTest(properties = {
+        "querydsl.slow-query.threshold=0ms",
+        "querydsl.slow-query.explain=false"
+})
+@Transactional
+class MemberSearchPlanTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    SlowQueryLog slowQueryLog;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @BeforeEach
+    public void before() {
+        for (int i = 0; i < 10; i++) {
+            Team team = new Team("team" + i);
+            em.persist(team);
+            for (int j = 0; j < 20; j++) {
+                em.persist(new Member("member" + i + "_" + j, j * 5, team));
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void everySearchShapeUsesIndex() {
+        // username, teamName, ageGoe, ageLoe 중 하나 이상 채워진 모든 조합
+        for (int shape = 1; shape < 16; shape++) {
+            MemberSearchCondition condition = condition(shape);
+
+            slowQueryLog.clear();
+            memberJpaRepository.search(condition);
+
+            assertThat(explain(lastSelect())).as("shape %s", condition).doesNotContain("tableScan");
+        }
+    }
+
+    @Test
+    public void teamNameSearchStartsFromTeamIndex() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+
+        slowQueryLog.clear();
+        memberJpaRepository.search(condition);
+
+        assertThat(explain(lastSelect()))
+                .containsIgnoringCase("idx_team_name")
+                .doesNotContain("tableScan");
+    }
+
+    @Test
+    public void pagedSearchUsesIndex() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        condition.setAgeGoe(50);
+
+        slowQueryLog.clear();
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 5));
+
+        // content 쿼리, count 쿼리
+        for (SlowQuery slowQuery : selects()) {
+            assertThat(explain(slowQuery.getBoundSql())).as(slowQuery.getSql()).doesNotContain("tableScan");
+        }
+    }
+
+    private MemberSearchCondition condition(int shape) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        if ((shape & 1) != 0) {
+            condition.setUsername("member1_1");
+        }
+        if ((shape & 2) != 0) {
+            condition.setTeamName("team1");
+        }
+        if ((shape & 4) != 0) {
+            condition.setAgeGoe(80);
+        }
+        if ((shape & 8) != 0) {
+            condition.setAgeLoe(10);
+        }
+        return condition;
+    }
+
+    private String lastSelect() {
+        List<SlowQuery> selects = selects();
+        assertThat(selects).isNotEmpty();
+        return selects.get(0).getBoundSql();
+    }
+
+    private List<SlowQuery> selects() {
+        return slowQueryLog.getSlowQueries().stream()
+                .filter(query -> query.getBoundSql().stripLeading().toLowerCase().startsWith("select"))
+                .collect(Collectors.toList());
+    }
+
+    // 같은 트랜잭션(커넥션)에서 실행해야 아직 커밋되지 않은 데이터로 통계가 잡힌다.
+    private String explain(String sql) {
+        return String.valueOf(em.createNativeQuery("EXPLAIN " + sql).getSingleResult());
+    }
+}
@@ -0,0 +1,259 @@
+package study.querydsl.respository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  스냅샷은 커밋된 데이터만 반영하기 때문에 커밋된 데이터로 테스트한다.
+ *  읽기/쓰기 트랜잭션 안의 검색은 항상 JPA로 실행된다. -> 스냅샷 결과와 비교하는 기준
+ *
+ *  설정이 달라 컨텍스트가 새로 만들어지는데, 스키마를 다시 만들면(create) 시퀀스가 처음부터 다시 시작해서
+ *  먼저 만들어진 컨텍스트들이 이미 받아둔 id와 순서가 뒤섞인다. -> 스키마는 그대로 두고(update) 사용한다.
+ *
+ *  인덱스는 테스트에서 직접 다시 만든다. (rebuild-delay 동안은 바뀐 회원을 인덱스 밖에서 확인한다.)
+ * */
+@SpringBootTest(properties = {
+        "querydsl.snapshot.enabled=true",
+        "querydsl.snapshot.index.rebuild-delay=1h",
+        "spring.jpa.hibernate.ddl-auto=update"
+})
+class MemberSnapshotTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberSnapshot memberSnapshot;
+
+    Long teamAId;
+    Long member1Id;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            Team teamB = new Team("teamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            Member member1 = new Member("member1", 10, teamA);
+            em.persist(member1);
+            em.persist(new Member("member2", 20, teamA));
+            em.persist(new Member("member3", 30, teamB));
+            em.persist(new Member("member4", 40));
+            teamAId = teamA.getId();
+            member1Id = member1.getId();
+        });
+        memberSnapshot.refresh();
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void sameResultAsJpa() {
+        assertThat(memberSnapshot.isFresh()).isTrue();
+
+        assertSameAsJpa(condition(null, null, null, null));
+        assertSameAsJpa(condition("member1", null, null, null));
+        assertSameAsJpa(condition(null, "teamA", null, null));
+        assertSameAsJpa(condition(null, null, 20, 35));
+        assertSameAsJpa(condition(null, "teamB", 20, null));
+        assertSameAsJpa(condition("nobody", null, null, null));
+    }
+
+    @Test
+    public void servedWithoutQuery() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+
+        assertThat(memberRepository.search(condition(null, "teamA", 15, null)))
+                .extracting("username").containsExactly("member2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+    }
+
+    @Test
+    public void entityChangesAreAppliedIncrementally() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("member5", 50, em.getReference(Team.class, teamAId)));
+            em.find(Team.class, teamAId).setName("teamRenamed");
+            em.remove(em.find(Member.class, member1Id));
+        });
+
+        assertThat(memberSnapshot.isFresh()).isTrue();
+        assertChangesApplied();
+
+        // 인덱스를 다시 만든 뒤에도 같은 결과
+        memberSnapshot.rebuildIndex();
+        assertChangesApplied();
+    }
+
+    private void assertChangesApplied() {
+        assertThat(memberRepository.search(condition(null, "teamRenamed", null, null)))
+                .extracting("username").containsExactly("member2", "member5");
+        assertThat(memberSnapshot.count(condition(null, "teamRenamed", null, null))).hasValue(2);
+        assertThat(memberSnapshot.count(condition(null, "teamA", null, null))).hasValue(0);
+        assertThat(memberSnapshot.count(condition("member1", null, null, null))).hasValue(0);
+        assertThat(memberSnapshot.count(condition(null, null, 15, null))).hasValue(4);
+        // 바뀐 회원(member2, member5)과 인덱스 결과가 member_id 순서로 합쳐져서 잘린다.
+        assertThat(memberSnapshot.page(condition(null, null, 15, null), PageRequest.of(0, 3)).orElseThrow())
+                .extracting("username").containsExactly("member2", "member3", "member4");
+        Page<MemberTeamDto> page = memberSnapshot.page(condition(null, null, 15, null), PageRequest.of(1, 2)).orElseThrow();
+        assertThat(page.getContent()).extracting("username").containsExactly("member4", "member5");
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertSameAsJpa(condition(null, null, null, null));
+        assertSameAsJpa(condition(null, "teamA", null, null));
+        assertSameAsJpa(condition(null, null, 15, null));
+    }
+
+    // content는 member_id 순서만 지원한다. -> sort가 있는 페이지는 스냅샷에서 주지 않고 JPA로 검색한다.
+    @Test
+    public void sortedPageIsNotServedFromSnapshot() {
+        MemberSearchCondition condition = condition(null, "teamA", null, null);
+
+        assertThat(memberSnapshot.page(condition, PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age")))).isEmpty();
+        assertThat(memberSnapshot.page(condition, PageRequest.of(0, 2))).isPresent();
+    }
+
+    @Test
+    public void rolledBackChangesAreNotApplied() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(new Member("rolledBack", 60));
+            em.flush();
+            status.setRollbackOnly();
+        });
+
+        assertThat(memberSnapshot.isFresh()).isTrue();
+        assertThat(memberRepository.search(condition("rolledBack", null, null, null))).isEmpty();
+    }
+
+    @Test
+    public void bulkUpdateMakesSnapshotStale() {
+        transactionTemplate.executeWithoutResult(status -> queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .execute());
+
+        // 다시 읽기 전까지는 JPA로 검색한다.
+        assertThat(memberSnapshot.isFresh()).isFalse();
+        assertThat(memberRepository.search(condition("member1", null, null, null)))
+                .extracting("age").containsExactly(11);
+
+        memberSnapshot.refresh();
+        assertThat(memberSnapshot.isFresh()).isTrue();
+        assertSameAsJpa(condition(null, null, 21, null));
+    }
+
+    @Test
+    public void snapshotResultIsACopy() {
+        List<MemberTeamDto> result = memberRepository.search(condition("member1", null, null, null));
+        result.get(0).setUsername("changed");
+
+        assertThat(memberRepository.search(condition("member1", null, null, null))).hasSize(1);
+    }
+
+    // content와 total을 모두 스냅샷에서 구한다. -> 쿼리가 실행되지 않고 서로 어긋나지 않는다.
+    @Test
+    public void pageServedFromSnapshot() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        MemberSearchCondition condition = condition(null, "teamA", null, null);
+        assertThat(memberSnapshot.count(condition)).hasValue(2);
+
+        long statements = statistics.getPrepareStatementCount();
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(1, 1));
+        Page<MemberTeamDto> simplePage = memberRepository.searchPageSimple(condition, PageRequest.of(0, 5));
+
+        assertThat(page.getContent()).extracting("username").containsExactly("member2");
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        assertThat(simplePage.getContent()).extracting("username").containsExactly("member1", "member2");
+        assertThat(simplePage.getTotalElements()).isEqualTo(2);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+    }
+
+    /*
+     *  회원 수(4)가 max-rows 를 넘는다. -> 스냅샷 없이 JPA로 검색하고, max-age 가 지날 때까지 다시 읽지(count 쿼리) 않는다.
+     * */
+    @Nested
+    @TestPropertySource(properties = "querydsl.snapshot.max-rows=3")
+    class OverMaxRows {
+
+        @Test
+        public void searchesDoNotReloadOverMaxRows() {
+            // 시작할 때의 읽기가 끝날 때까지 기다린다.
+            awaitNotLoading();
+            assertThat(memberSnapshot.isFresh()).isFalse();
+            Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+            long statements = statistics.getPrepareStatementCount();
+
+            for (int i = 0; i < 3; i++) {
+                assertThat(memberRepository.search(condition("member1", null, null, null))).hasSize(1);
+                assertThat(memberSnapshot.isLoading()).isFalse();
+            }
+
+            // 검색 쿼리만 실행된다.
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements + 3);
+        }
+
+        private void awaitNotLoading() {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (memberSnapshot.isLoading() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void assertSameAsJpa(MemberSearchCondition condition) {
+        List<MemberTeamDto> fromSnapshot = memberRepository.search(condition);
+        List<MemberTeamDto> fromJpa = transactionTemplate.execute(status -> memberRepository.search(condition));
+        assertThat(fromSnapshot).containsExactlyInAnyOrderElementsOf(fromJpa);
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
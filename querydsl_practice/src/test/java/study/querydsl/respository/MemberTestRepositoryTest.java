@@ -0,0 +1,55 @@
+package study.querydsl.respository;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+@SpringBootTest
+@Transactional
+class MemberTestRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @Test
+    public void applySlicePaginationTest() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamA));
+        em.persist(new Member("member4", 40, teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        // Pageable의 정렬이 적용되고, pageSize + 1 번째 row로 다음 페이지 여부를 판단한다.
+        Slice<Member> first = memberTestRepository.applySlicePagination(condition,
+                PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age")));
+
+        assertThat(first.getContent()).extracting("username").containsExactly("member3", "member2");
+        assertThat(first.hasNext()).isTrue();
+
+        Slice<Member> last = memberTestRepository.applySlicePagination(condition,
+                PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "age")));
+
+        assertThat(last.getContent()).extracting("username").containsExactly("member1");
+        assertThat(last.hasNext()).isFalse();
+    }
+}
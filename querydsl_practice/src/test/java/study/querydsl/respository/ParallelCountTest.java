@@ -0,0 +1,128 @@
+package study.querydsl.respository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.support.PageQueryExecutor;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  병렬 count는 별도의 커넥션에서 실행되기 때문에 커밋된 데이터로 테스트해야 한다.
+ *  실행된 SQL 수는 Hibernate 통계로 센다. (병렬 count 스레드에서 실행된 SQL도 포함된다.)
+ * */
+@SpringBootTest(properties = {
+        "querydsl.parallel-count.enabled=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class ParallelCountTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    PageQueryExecutor pageQueryExecutor;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    Statistics statistics;
+
+    @BeforeEach
+    public void before() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            for (int i = 1; i <= 5; i++) {
+                em.persist(new Member("member" + i, i * 10, teamA));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void parallelCountTest() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        Page<MemberTeamDto> result = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2));
+
+        assertThat(result.getContent()).extracting("username").containsExactly("member1", "member2");
+        assertThat(result.getTotalElements()).isEqualTo(5);
+    }
+
+    @Test
+    public void parallelCountSkippedTest() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(30);
+
+        // 첫 페이지에서 content가 pageSize 보다 적으면 count 없이 total을 계산한다.
+        // 읽기/쓰기 트랜잭션 안에서는 병렬로 실행하지 않는다. -> count 쿼리를 미리 시작하지 않아서 content 쿼리 하나만 실행된다.
+        long statements = statistics.getPrepareStatementCount();
+        Page<MemberTeamDto> result = transactionTemplate.execute(status ->
+                memberRepository.searchPageComplex(condition, PageRequest.of(0, 10)));
+
+        assertThat(result.getContent()).hasSize(3);
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements + 1);
+    }
+
+    // 병렬 count는 content보다 먼저 시작한다. -> count가 필요 없는 페이지여도 이미 시작한 count 쿼리는 끝까지 실행된다.
+    @Test
+    public void parallelCountRunsEvenIfNotNeeded() {
+        JPAQuery<Long> countQuery = queryFactory.select(member.count()).from(member);
+
+        // content(SQL 없음)는 count 쿼리가 실행된 뒤에 돌려준다.
+        long statements = statistics.getPrepareStatementCount();
+        Page<String> result = pageQueryExecutor.getPage(PageRequest.of(0, 10), () -> {
+            awaitStatements(statements + 1);
+            return List.of("a", "b", "c");
+        }, countQuery);
+
+        assertThat(result.getTotalElements()).isEqualTo(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements + 1);
+    }
+
+    private void awaitStatements(long statements) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (statistics.getPrepareStatementCount() < statements && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package study.querydsl.respository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  2차 캐시는 커밋된 데이터만 저장하기 때문에 커밋된 데이터로 테스트해야 한다.
+ * */
+@SpringBootTest
+class SecondLevelCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    Statistics statistics;
+    Long teamId;
+    Long memberId;
+
+    @BeforeEach
+    public void before() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            Member member1 = new Member("member1", 10, teamA);
+            em.persist(member1);
+            em.persist(new Member("member2", 20, teamA));
+            teamId = teamA.getId();
+            memberId = member1.getId();
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void teamEntityCache() {
+        CacheRegionStatistics region = statistics.getDomainDataRegionStatistics("team");
+        long hits = region.getHitCount();
+
+        // 트랜잭션마다 영속성 컨텍스트가 새로 만들어지기 때문에 두 번째 조회부터는 2차 캐시에서 가져온다.
+        transactionTemplate.executeWithoutResult(status -> em.find(Team.class, teamId));
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = em.find(Team.class, teamId);
+            assertThat(team.getMembers()).extracting("username").containsExactlyInAnyOrder("member1", "member2");
+        });
+        transactionTemplate.executeWithoutResult(status -> em.find(Team.class, teamId));
+
+        assertThat(region.getHitCount()).isGreaterThan(hits);
+    }
+
+    @Test
+    public void queryCacheEvictedByBulkUpdate() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        // 쿼리 캐시 영역은 처음 사용할 때 만들어진다.
+        List<MemberTeamDto> first = transactionTemplate.execute(status -> memberTestRepository.searchCacheable(condition));
+        CacheRegionStatistics region = statistics.getQueryRegionStatistics(MemberTestRepository.MEMBER_SEARCH_REGION);
+        long hits = region.getHitCount();
+        List<MemberTeamDto> second = transactionTemplate.execute(status -> memberTestRepository.searchCacheable(condition));
+
+        assertThat(region.getHitCount()).isEqualTo(hits + 1);
+        assertThat(second).isEqualTo(first);
+
+        // 벌크 연산은 영속성 컨텍스트를 거치지 않지만, 해당 테이블의 쿼리 캐시와 엔티티 캐시는 무효화된다.
+        transactionTemplate.executeWithoutResult(status -> queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .execute());
+
+        List<MemberTeamDto> afterUpdate = transactionTemplate.execute(status -> memberTestRepository.searchCacheable(condition));
+        assertThat(afterUpdate).extracting("age").containsExactlyInAnyOrder(11, 21);
+
+        Member found = transactionTemplate.execute(status -> em.find(Member.class, memberId));
+        assertThat(found.getAge()).isEqualTo(11);
+    }
+
+    @Test
+    public void entityCacheEvictedByBulkDelete() {
+        // 캐시에 올려둔 뒤 벌크 delete 하면 더 이상 캐시에서 조회되지 않아야 한다.
+        transactionTemplate.executeWithoutResult(status -> em.find(Member.class, memberId));
+
+        transactionTemplate.executeWithoutResult(status -> queryFactory
+                .delete(member)
+                .where(member.id.eq(memberId))
+                .execute());
+
+        Member found = transactionTemplate.execute(status -> em.find(Member.class, memberId));
+        assertThat(found).isNull();
+    }
+}
@@ -0,0 +1,72 @@
+package study.querydsl.respository;
+
+import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.TeamMembersDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+@SpringBootTest
+@Transactional
+class TeamRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @BeforeEach
+    public void before() {
+        for (int i = 0; i < 5; i++) {
+            Team team = new Team("team" + i);
+            em.persist(team);
+            for (int j = 0; j < 3; j++) {
+                em.persist(new Member("member" + i + j, j * 10, team));
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void searchTeamsWithMembers() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+
+        Page<TeamMembersDto> result = teamRepository.searchTeamsWithMembers("team",
+                PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "name")));
+
+        assertThat(result.getTotalElements()).isEqualTo(5);
+        assertThat(result.getTotalPages()).isEqualTo(3);
+        assertThat(result.getContent()).extracting("teamName").containsExactly("team2", "team1");
+        assertThat(result.getContent().get(0).getMembers()).extracting("username")
+                .containsExactlyInAnyOrder("member20", "member21", "member22");
+
+        // id 페이징 + 컬렉션 fetch join + count -> 팀 수, 회원 수와 관계없이 3번
+        assertThat(statistics.getPrepareStatementCount() - statements).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void searchTeamsWithMembersEmpty() {
+        Page<TeamMembersDto> result = teamRepository.searchTeamsWithMembers("nobody", PageRequest.of(0, 2));
+
+        assertThat(result.getContent()).isEmpty();
+        assertThat(result.getTotalElements()).isZero();
+    }
+}
@@ -0,0 +1,139 @@
+package study.querydsl.respository.support;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberJpaRepository;
+import study.querydsl.respository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  비동기 조회는 별도의 트랜잭션에서 실행되기 때문에 커밋된 데이터로 테스트해야 한다.
+ *  threads=1, queue-capacity=1 -> 실행 중 1개 + 대기 1개를 넘으면 거절된다.
+ * */
+@SpringBootTest(properties = {
+        "querydsl.async.threads=1",
+        "querydsl.async.queue-capacity=1"
+})
+class AsyncQueryExecutorTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    AsyncQueryExecutor asyncQueryExecutor;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("member" + i, 10 + i, teamA));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void sameResultAsBlockingSearch() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(12);
+        PageRequest pageRequest = PageRequest.of(0, 2);
+
+        List<MemberTeamDto> search = memberRepository.searchAsync(condition).get(5, TimeUnit.SECONDS);
+        Page<MemberTeamDto> simple = memberRepository.searchPageSimpleAsync(condition, pageRequest).get(5, TimeUnit.SECONDS);
+        Page<MemberTeamDto> complex = memberRepository.searchPageComplexAsync(condition, pageRequest).get(5, TimeUnit.SECONDS);
+
+        assertThat(search).hasSize(3);
+        assertThat(search).containsExactlyInAnyOrderElementsOf(memberRepository.search(condition));
+        assertThat(simple.getTotalElements()).isEqualTo(3);
+        assertThat(simple.getContent()).hasSize(2);
+        assertThat(complex.getContent()).isEqualTo(memberRepository.searchPageComplex(condition, pageRequest).getContent());
+    }
+
+    // /v1/members 는 MemberJpaRepository.search 를 비동기로 실행한다.
+    @Test
+    public void jpaRepositorySearchAsync() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(12);
+
+        List<MemberTeamDto> search = memberJpaRepository.searchAsync(condition).get(5, TimeUnit.SECONDS);
+
+        assertThat(search).containsExactlyInAnyOrderElementsOf(memberJpaRepository.search(condition));
+        assertThat(search).hasSize(3);
+    }
+
+    @Test
+    public void runsInOwnReadOnlyTransaction() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        CompletableFuture<Boolean> future = asyncQueryExecutor.supply(() ->
+                Thread.currentThread() != caller
+                        && TransactionSynchronizationManager.isActualTransactionActive()
+                        && TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+
+        assertThat(future.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = asyncQueryExecutor.supply(() -> await(release));
+        CompletableFuture<Boolean> queued = asyncQueryExecutor.supply(() -> await(release));
+
+        CompletableFuture<Boolean> rejected = asyncQueryExecutor.supply(() -> true);
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+
+        // 끝난 작업의 자리는 다시 사용할 수 있다.
+        assertThat(asyncQueryExecutor.supply(() -> true).get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
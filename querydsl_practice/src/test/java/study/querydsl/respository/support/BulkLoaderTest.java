@@ -0,0 +1,80 @@
+package study.querydsl.respository.support;
+
+import static org.assertj.core.api.Assertions.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  BulkLoader는 직접 트랜잭션을 커밋하기 때문에 테스트 후에 데이터를 지운다.
+ * */
+@SpringBootTest(properties = {
+        "querydsl.bulk-load.batch-size=100",
+        "querydsl.bulk-load.commit-size=1000"
+})
+class BulkLoaderTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    BulkLoader bulkLoader;
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void loadTest() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        List<Team> teams = bulkLoader.persistAll(Arrays.asList(new Team("teamA"), new Team("teamB")));
+        assertThat(teams).extracting("id").doesNotContainNull();
+
+        long statements = statistics.getPrepareStatementCount();
+        BulkLoadResult result = bulkLoader.load(BulkLoader.generate(2500, i -> {
+            Member member = new Member("member" + i, (int) (i % 100));
+            member.setTeam(teams.get((int) (i % 2)));
+            return member;
+        }));
+
+        assertThat(result.getRows()).isEqualTo(2500);
+        assertThat(result.getRowsPerSecond()).isPositive();
+        // insert는 100개씩 배치로, 시퀀스는 50개씩 가져오기 때문에 문장 수가 row 수보다 훨씬 적다.
+        assertThat(statistics.getPrepareStatementCount() - statements).isLessThan(2500 / 10);
+
+        Long teamACount = transactionTemplate.execute(status -> em
+                .createQuery("select count(m) from Member m where m.team.name = :name", Long.class)
+                .setParameter("name", "teamA")
+                .getSingleResult());
+        assertThat(teamACount).isEqualTo(1250);
+    }
+
+    // 바깥 트랜잭션이 있으면 commit-size 마다 커밋할 수 없다.
+    @Test
+    public void rejectsInsideTransaction() {
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status ->
+                bulkLoader.persistAll(Arrays.asList(new Team("teamA")))))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
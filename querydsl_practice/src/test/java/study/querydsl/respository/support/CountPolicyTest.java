@@ -0,0 +1,100 @@
+package study.querydsl.respository.support;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberTestRepository;
+
+import javax.persistence.EntityManager;
+
+// cap을 작게 잡아서 적은 데이터로도 추정 경로를 확인한다.
+// 통계는 테스트마다 데이터가 달라서 재사용하지 않는다. (ttl=0)
+@SpringBootTest(properties = {
+        "querydsl.count.policy=capped",
+        "querydsl.count.cap=10",
+        "querydsl.count.statistics-ttl=0s"
+})
+@Transactional
+class CountPolicyTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        // age 0 ~ 29
+        for (int i = 0; i < 30; i++) {
+            em.persist(new Member("member" + i, i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void underCapIsExact() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(25);
+
+        Page<Member> result = memberTestRepository.applyPagination(condition, PageRequest.of(0, 2));
+
+        assertThat(result.getTotalElements()).isEqualTo(5);
+        assertThat(((CountedPage<Member>) result).isTotalExact()).isTrue();
+    }
+
+    @Test
+    public void overCapWithoutConditionUsesRowCount() {
+        Page<Member> result = memberTestRepository.applyPagination(new MemberSearchCondition(), PageRequest.of(0, 5));
+
+        assertThat(result.getContent()).hasSize(5);
+        assertThat(result.getTotalElements()).isEqualTo(30);
+        assertThat(((CountedPage<Member>) result).isTotalExact()).isFalse();
+    }
+
+    @Test
+    public void overCapEstimatesFromColumnStatistics() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+
+        Page<Member> result = memberTestRepository.applyPagination(condition, PageRequest.of(0, 5));
+
+        // 실제 20건 -> age 0 ~ 29 에 고르게 분포한다고 보고 30 * (29 - 10) / 29 ≈ 20
+        assertThat(result.getTotalElements()).isBetween(18L, 22L);
+        assertThat(((CountedPage<Member>) result).isTotalExact()).isFalse();
+    }
+
+    @Test
+    public void equalityUsesDistinctValues() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        Page<Member> result = memberTestRepository.applyPagination(condition, PageRequest.of(0, 5));
+
+        // 실제 15건 -> 팀 이름 2종류 : 30 / 2
+        assertThat(result.getTotalElements()).isEqualTo(15);
+        assertThat(((CountedPage<Member>) result).isTotalExact()).isFalse();
+    }
+
+    @Test
+    public void lastPageIsExact() {
+        // 마지막 페이지는 count 쿼리 없이 offset + content 크기로 total을 구한다.
+        Page<Member> last = memberTestRepository.applyPagination(new MemberSearchCondition(), PageRequest.of(1, 20));
+        assertThat(last.getContent()).hasSize(10);
+        assertThat(last.getTotalElements()).isEqualTo(30);
+        assertThat(((CountedPage<Member>) last).isTotalExact()).isTrue();
+    }
+}
@@ -0,0 +1,80 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+class CountQueryCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    CountQueryCache countQueryCache;
+
+    @Autowired
+    DataChangeTracker dataChangeTracker;
+
+    /*
+     *  커밋 전의 변경을 flush 한 트랜잭션은 캐시된(변경 전) count를 받으면 안 된다.
+     *  -> 롤백하기 때문에 캐시는 그대로 남는다.
+     * */
+    @Test
+    public void pendingChangesBypassCachedCount() {
+        JPAQuery<Long> countQuery = queryFactory.select(member.count()).from(member).where(member.age.goe(1000));
+        assertThat(countQueryCache.cached(countQuery, () -> 5L).getAsLong()).isEqualTo(5L);
+        assertThat(countQueryCache.contains(countQuery)).isTrue();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(countQueryCache.cached(countQuery, () -> 6L).getAsLong()).isEqualTo(5L);
+
+            em.persist(new Member("pending", 1000));
+            em.flush();
+
+            assertThat(countQueryCache.contains(countQuery)).isFalse();
+            assertThat(countQueryCache.cached(countQuery, () -> 6L).getAsLong()).isEqualTo(6L);
+            status.setRollbackOnly();
+        });
+
+        // 롤백 이후에는 변경 알림으로 캐시가 비워진다.
+        assertThat(countQueryCache.contains(countQuery)).isFalse();
+        assertThat(countQueryCache.cached(countQuery, () -> 7L).getAsLong()).isEqualTo(7L);
+    }
+
+    // 캐시된 count는 count 쿼리가 읽는 테이블이 변경될 때만 지워진다.
+    @Test
+    public void invalidatesOnlyCountsReadingChangedTable() {
+        JPAQuery<Long> memberCount = queryFactory.select(member.count()).from(member).where(member.age.goe(2000));
+        JPAQuery<Long> teamCount = queryFactory.select(member.count()).from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq("invalidatesOnlyCountsReadingChangedTable"));
+        countQueryCache.cached(memberCount, () -> 1L).getAsLong();
+        countQueryCache.cached(teamCount, () -> 2L).getAsLong();
+
+        dataChangeTracker.tableChanged("team");
+
+        assertThat(countQueryCache.contains(memberCount)).isTrue();
+        assertThat(countQueryCache.contains(teamCount)).isFalse();
+
+        dataChangeTracker.tableChanged("member");
+
+        assertThat(countQueryCache.contains(memberCount)).isFalse();
+    }
+}
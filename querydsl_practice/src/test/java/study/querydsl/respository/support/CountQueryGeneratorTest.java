@@ -0,0 +1,97 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class CountQueryGeneratorTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before() {
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+    }
+
+    @Test
+    public void unusedLeftJoinRemoved() {
+        JPAQuery<Member> contentQuery = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team)
+                .where(member.age.goe(20))
+                .orderBy(member.username.desc())
+                .offset(1)
+                .limit(1);
+
+        JPAQuery<Long> countQuery = CountQueryGenerator.generate(em, contentQuery);
+
+        assertThat(countQuery.toString()).doesNotContain("join").doesNotContain("order by");
+        assertThat(CountQueryGenerator.count(countQuery)).isEqualTo(3);
+    }
+
+    @Test
+    public void referencedLeftJoinKept() {
+        JPAQuery<Member> contentQuery = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq("teamA"));
+
+        JPAQuery<Long> countQuery = CountQueryGenerator.generate(em, contentQuery);
+
+        assertThat(countQuery.toString()).contains("left join");
+        assertThat(CountQueryGenerator.count(countQuery)).isEqualTo(2);
+    }
+
+    // count(distinct team.name) 이 참조하는 join은 where 절에서 사용하지 않아도 남긴다.
+    @Test
+    public void distinctProjectionJoinKept() {
+        JPAQuery<String> contentQuery = queryFactory
+                .select(team.name)
+                .distinct()
+                .from(member)
+                .leftJoin(member.team, team);
+
+        JPAQuery<Long> countQuery = CountQueryGenerator.generate(em, contentQuery);
+
+        assertThat(countQuery.toString()).contains("left join");
+        assertThat(CountQueryGenerator.count(countQuery)).isEqualTo(2);
+    }
+
+    @Test
+    public void fetchJoinConverted() {
+        JPAQuery<Member> contentQuery = queryFactory
+                .selectFrom(member)
+                .join(member.team, team).fetchJoin();
+
+        JPAQuery<Long> countQuery = CountQueryGenerator.generate(em, contentQuery);
+
+        assertThat(countQuery.toString()).doesNotContain("fetch");
+        assertThat(CountQueryGenerator.count(countQuery)).isEqualTo(4);
+    }
+}
@@ -0,0 +1,163 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+
+/*
+ *  테스트 스레드가 쓴 뒤에도 SingleFlight를 사용하도록 read-your-writes 는 끈다. (고정된 세션은 결과를 공유하지 않는다.)
+ * */
+@SpringBootTest(properties = "querydsl.datasource.read-your-writes.enabled=false")
+class DataVersionTest {
+
+    private static final String[] MEMBER_TABLES = {"member", "team"};
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    DataVersion dataVersion;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    AsyncQueryExecutor asyncQueryExecutor;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Value("${querydsl.async.threads}")
+    int asyncThreads;
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createQuery("delete from Member").executeUpdate();
+            em.createQuery("delete from Team").executeUpdate();
+        });
+    }
+
+    @Test
+    public void bumpedByEntityChangesAndBulkClauses() {
+        long initial = dataVersion.version(MEMBER_TABLES);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            em.persist(new Member("member1", 10, teamA));
+        });
+        long afterInsert = dataVersion.version(MEMBER_TABLES);
+        assertThat(afterInsert).isGreaterThan(initial);
+
+        transactionTemplate.executeWithoutResult(status -> queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .execute());
+        assertThat(dataVersion.version(MEMBER_TABLES)).isGreaterThan(afterInsert);
+    }
+
+    @Test
+    public void etagDependsOnVersionAndKey() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        MemberSearchCondition sameCondition = new MemberSearchCondition();
+        sameCondition.setTeamName("teamA");
+
+        String etag = dataVersion.etag(MEMBER_TABLES, condition, PageRequest.of(0, 20));
+        assertThat(dataVersion.etag(MEMBER_TABLES, sameCondition, PageRequest.of(0, 20))).isEqualTo(etag);
+        assertThat(dataVersion.etag(MEMBER_TABLES, condition, PageRequest.of(1, 20))).isNotEqualTo(etag);
+
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Team("teamB")));
+        assertThat(dataVersion.etag(MEMBER_TABLES, condition, PageRequest.of(0, 20))).isNotEqualTo(etag);
+    }
+
+    /*
+     *  실행 중인 검색이 있을 때 변경이 커밋되면, 그 뒤에 온 검색은 실행 중인 검색을 함께 받지 않는다.
+     *  (함께 받으면 새 버전의 ETag에 변경 전에 읽은 결과가 붙는다.)
+     *  비동기 executor를 모두 막아두고 검색을 실행 대기 상태로 만든다.
+     * */
+    @Test
+    public void searchAfterWriteDoesNotJoinInFlightSearch() throws Exception {
+        Team teamA = transactionTemplate.execute(status -> {
+            Team team = new Team("teamA");
+            em.persist(team);
+            em.persist(new Member("member1", 10, team));
+            return team;
+        });
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        double executed = calls("executed");
+        double coalesced = calls("coalesced");
+
+        CountDownLatch started = new CountDownLatch(asyncThreads);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < asyncThreads; i++) {
+            asyncQueryExecutor.supply(() -> {
+                started.countDown();
+                return await(release);
+            });
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Page<MemberTeamDto>> beforeWrite;
+        CompletableFuture<Page<MemberTeamDto>> sameVersion;
+        CompletableFuture<Page<MemberTeamDto>> afterWrite;
+        try {
+            beforeWrite = memberRepository.searchPageSimpleAsync(condition, pageRequest);
+            sameVersion = memberRepository.searchPageSimpleAsync(condition, pageRequest);
+            transactionTemplate.executeWithoutResult(status ->
+                    em.persist(new Member("member2", 20, em.getReference(Team.class, teamA.getId()))));
+            afterWrite = memberRepository.searchPageSimpleAsync(condition, pageRequest);
+        } finally {
+            release.countDown();
+        }
+
+        // 변경 전의 두 호출만 함께 받고, 변경 뒤의 호출은 따로 실행된다.
+        assertThat(calls("coalesced")).isEqualTo(coalesced + 1);
+        assertThat(calls("executed")).isEqualTo(executed + 2);
+        assertThat(sameVersion.get(5, TimeUnit.SECONDS).getContent())
+                .isEqualTo(beforeWrite.get(5, TimeUnit.SECONDS).getContent());
+        assertThat(afterWrite.get(5, TimeUnit.SECONDS).getContent()).extracting("username")
+                .containsExactly("member1", "member2");
+    }
+
+    private double calls(String result) {
+        return meterRegistry.counter("querydsl.single-flight.calls", "name", "searchPageSimple", "result", result).count();
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Projections;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.UserDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class FastProjectionsTest {
+
+    @Autowired
+    EntityManager em;
+
+    JPAQueryFactory queryFactory;
+
+    @BeforeEach
+    public void before() {
+        queryFactory = new JPAQueryFactory(em);
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30));
+    }
+
+    @Test
+    public void sameResultAsProjections() {
+        List<MemberDto> expected = queryFactory
+                .select(Projections.bean(MemberDto.class, member.username, member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch();
+
+        assertThat(queryFactory
+                .select(FastProjections.bean(MemberDto.class, member.username, member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch()).isEqualTo(expected);
+
+        assertThat(queryFactory
+                .select(FastProjections.fields(MemberDto.class, member.username, member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch()).isEqualTo(expected);
+
+        assertThat(queryFactory
+                .select(FastProjections.constructor(MemberDto.class, member.username, member.age))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch()).isEqualTo(expected);
+    }
+
+    @Test
+    public void aliasAndSubQuery() {
+        QMember memberSub = new QMember("memberSub");
+
+        List<UserDto> result = queryFactory
+                .select(FastProjections.fields(UserDto.class,
+                        member.username.as("name"),
+                        ExpressionUtils.as(JPAExpressions
+                                .select(memberSub.age.max())
+                                .from(memberSub), "age")
+                ))
+                .from(member)
+                .orderBy(member.username.asc())
+                .fetch();
+
+        assertThat(result).extracting("name").containsExactly("member1", "member2", "member3");
+        assertThat(result).extracting("age").containsOnly(30);
+    }
+
+    @Test
+    public void unmatchedPropertyAndNullValue() {
+        // 이름이 맞지 않는 프로퍼티(username)는 무시되고, null은 기본 타입 파라미터의 기본값이 된다.
+        List<UserDto> fields = queryFactory
+                .select(FastProjections.fields(UserDto.class, member.username, member.age))
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch();
+        assertThat(fields.get(0).getName()).isNull();
+        assertThat(fields.get(0).getAge()).isEqualTo(10);
+
+        List<MemberDto> constructor = queryFactory
+                .select(FastProjections.constructor(MemberDto.class, member.username.max(), member.age.max()))
+                .from(member)
+                .where(member.username.eq("nobody"))
+                .fetch();
+        assertThat(constructor).hasSize(1);
+        assertThat(constructor.get(0).getUsername()).isNull();
+        assertThat(constructor.get(0).getAge()).isZero();
+    }
+}
@@ -0,0 +1,123 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.core.NonUniqueResultException;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberJpaRepository;
+import study.querydsl.respository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class QueryMetricsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+    }
+
+    @Test
+    public void predicateShape() {
+        assertThat(QueryMetrics.predicate(null)).isEqualTo("none");
+        assertThat(QueryMetrics.predicate(team.name.eq("teamB").and(member.age.goe(35))))
+                .isEqualTo("Member.age:GOE,Team.name:EQ");
+        // 검색 값이 달라도 태그는 같다.
+        assertThat(QueryMetrics.predicate(member.age.goe(10).and(member.age.loe(20))))
+                .isEqualTo(QueryMetrics.predicate(member.age.goe(30).and(member.age.loe(40))));
+    }
+
+    @Test
+    public void preparedSearch() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+        condition.setAgeGoe(35);
+
+        Timer timer = timer("MemberJpaRepository.search", "fetch", "Member.age:GOE,Team.name:EQ");
+        long count = timer == null ? 0 : timer.count();
+
+        List<MemberTeamDto> result = memberJpaRepository.search(condition);
+
+        assertThat(result).extracting("username").containsExactly("member4");
+        assertThat(timer("MemberJpaRepository.search", "fetch", "Member.age:GOE,Team.name:EQ").count())
+                .isEqualTo(count + 1);
+        assertThat(meterRegistry.get("querydsl.query.rows")
+                .tag("method", "MemberJpaRepository.search")
+                .tag("predicate", "Member.age:GOE,Team.name:EQ")
+                .summary().max()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void contentAndCountQuery() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 2));
+
+        // content 쿼리와 content 쿼리로 만든 count 쿼리 모두 리포지토리 메서드로 기록된다.
+        assertThat(timer("MemberRepositoryImpl.searchPageComplex", "fetch", "Member.age:GOE")).isNotNull();
+        assertThat(timer("MemberRepositoryImpl.searchPageComplex", "fetchOne", "Member.age:GOE")).isNotNull();
+    }
+
+    @Test
+    public void errorCount() {
+        assertThatThrownBy(() -> queryFactory
+                .selectFrom(member)
+                .where(member.age.gt(10))
+                .fetchOne())
+                .isInstanceOf(NonUniqueResultException.class);
+
+        assertThat(meterRegistry.get("querydsl.query.errors")
+                .tag("predicate", "Member.age:GT")
+                .tag("exception", "NonUniqueResultException")
+                .counter().count()).isGreaterThanOrEqualTo(1.0);
+    }
+
+    private Timer timer(String method, String operation, String predicate) {
+        return meterRegistry.find("querydsl.query")
+                .tag("method", method)
+                .tag("operation", operation)
+                .tag("predicate", predicate)
+                .tag("exception", "none")
+                .timer();
+    }
+}
@@ -0,0 +1,191 @@
+package study.querydsl.respository.support;
+
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.respository.MemberJpaRepository;
+import study.querydsl.respository.MemberRepository;
+import study.querydsl.respository.MemberTestRepository;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ *  primary(spring.datasource)와 replica(H2 메모리 DB) 두 개로 라우팅을 확인한다.
+ *  replica는 primary의 스키마만 복사하고 데이터는 따로 넣는다. -> 어느 DB에서 읽었는지 결과로 구분된다.
+ *  두 번째 replica는 접속할 수 없는 주소 -> 장애로 표시되고 읽기는 첫 번째 replica로 넘어간다.
+ *  primary 풀에 spring.datasource.hikari 설정이 적용되는지는 커넥션마다 실행되는 connection-init-sql로 확인한다.
+ * */
+@SpringBootTest(properties = {
+        "querydsl.datasource.replicas[0].url=" + ReplicaRoutingTest.REPLICA_URL,
+        "querydsl.datasource.replicas[0].username=sa",
+        "querydsl.datasource.replicas[1].url=jdbc:h2:tcp://localhost:1/~/unreachable",
+        "querydsl.datasource.replicas[1].username=sa",
+        "querydsl.datasource.connection-timeout=250ms",
+        "querydsl.datasource.health-check-interval=1h",
+        "querydsl.datasource.read-your-writes.pin-duration=1h",
+        "spring.datasource.hikari.connection-init-sql=set @pool = 'primary-hikari'"
+})
+class ReplicaRoutingTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    ReadYourWrites readYourWrites;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberTestRepository memberTestRepository;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Value("${spring.datasource.url}")
+    String primaryUrl;
+
+    @BeforeEach
+    public void before() throws SQLException {
+        List<String> schema = new ArrayList<>();
+        try (Connection primary = DriverManager.getConnection(primaryUrl, "sa", "");
+             Statement statement = primary.createStatement();
+             ResultSet script = statement.executeQuery("script nodata")) {
+            while (script.next()) {
+                schema.add(script.getString(1));
+            }
+        }
+        try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = replica.createStatement()) {
+            statement.execute("drop all objects");
+            for (String sql : schema) {
+                statement.execute(sql);
+            }
+            statement.execute("insert into member (member_id, username, age) values (1000, 'replicaMember', 10)");
+        }
+        readYourWrites.clear();
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> em.createQuery("delete from Member").executeUpdate());
+        readYourWrites.clear();
+    }
+
+    @Test
+    public void readOnlyCallsGoToReplica() {
+        insertIntoPrimary("primaryMember");
+        readYourWrites.clear();
+
+        assertThat(memberJpaRepository.findByUsername_Querydsl("replicaMember")).hasSize(1);
+        assertThat(memberJpaRepository.findByUsername_Querydsl("primaryMember")).isEmpty();
+        assertThat(memberTestRepository.findByUsername("replicaMember")).hasSize(1);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("replicaMember");
+
+        // readOnly가 아닌 트랜잭션 안에서는 primary에서 읽는다.
+        List<Member> fromPrimary = transactionTemplate.execute(status -> memberTestRepository.findByUsername("primaryMember"));
+        assertThat(fromPrimary).hasSize(1);
+    }
+
+    @Test
+    public void unreachableReplicaFailsOver() {
+        // 돌아가면서 사용하다가 접속할 수 없는 replica는 장애로 표시되고 정상 replica에서 읽는다.
+        for (int i = 0; i < 4; i++) {
+            assertThat(memberTestRepository.findByUsername("replicaMember")).hasSize(1);
+        }
+    }
+
+    @Test
+    public void readYourWrites() {
+        insertIntoPrimary("newMember");
+
+        // 쓰기 직후에는 readOnly 여도 primary에서 읽는다.
+        assertThat(memberTestRepository.findByUsername("newMember")).hasSize(1);
+
+        // 다른 세션은 고정되지 않는다.
+        readYourWrites.bind("otherSession");
+        assertThat(memberTestRepository.findByUsername("newMember")).isEmpty();
+
+        readYourWrites.clear();
+        assertThat(memberTestRepository.findByUsername("newMember")).isEmpty();
+    }
+
+    // ETag를 붙이는 조회는 쓰기와 상관없이 primary에서 읽는다. -> 비동기로 실행되는 조회에도 넘어간다.
+    @Test
+    public void readPrimaryScopeGoesToPrimary() throws Exception {
+        insertIntoPrimary("primaryMember");
+        readYourWrites.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("primaryMember");
+        assertThat(readYourWrites.readPrimary(() -> memberTestRepository.findByUsername("primaryMember"))).hasSize(1);
+        assertThat(readYourWrites.readPrimary(() -> memberRepository.searchAsync(condition)).get(5, TimeUnit.SECONDS))
+                .hasSize(1);
+
+        // 범위 밖에서는 다시 replica
+        assertThat(memberTestRepository.findByUsername("primaryMember")).isEmpty();
+        assertThat(readYourWrites.isPrimaryScope()).isFalse();
+    }
+
+    // 트랜잭션 없이 가져가는 커넥션은 primary -> spring.datasource.hikari 설정으로 만든 커넥션이다.
+    @Test
+    public void primaryPoolUsesHikariProperties() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("select @pool")) {
+            assertThat(result.next()).isTrue();
+            assertThat(result.getString(1)).isEqualTo("primary-hikari");
+        }
+    }
+
+    // 계정을 넘겨받는 getConnection도 같은 곳으로 보낸다.
+    @Test
+    public void explicitCredentialsAreRouted() throws SQLException {
+        DataSource primary = new DriverManagerDataSource(primaryUrl);
+        try (ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary,
+                Map.of("replica", new DriverManagerDataSource(REPLICA_URL)), readYourWrites, Duration.ofHours(1))) {
+            Boolean previous = ReplicaRoutingDataSource.routeReadOnly(true);
+            try (Connection connection = routing.getConnection("sa", "")) {
+                assertThat(connection.getMetaData().getURL()).contains("replica");
+            } finally {
+                ReplicaRoutingDataSource.restoreRouting(previous);
+            }
+            try (Connection connection = routing.getConnection("sa", "")) {
+                assertThat(connection.getMetaData().getURL()).doesNotContain("replica");
+            }
+        }
+    }
+
+    private void insertIntoPrimary(String username) {
+        transactionTemplate.executeWithoutResult(status -> memberJpaRepository.save(new Member(username, 20)));
+    }
+}
@@ -0,0 +1,143 @@
+package study.querydsl.respository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ *  실행 결과를 직접 완료시키는 CompletableFuture로 "실행 중" 상태를 만들어서 테스트한다.
+ * */
+@SpringBootTest(properties = "querydsl.single-flight.timeout=1s")
+class SingleFlightTest {
+
+    @Autowired
+    SingleFlight singleFlight;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    StatementCounter statementCounter;
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> query = new CompletableFuture<>();
+        double coalesced = calls("coalesced");
+
+        CompletableFuture<String> first = singleFlight.execute("test", List.of("same"), () -> {
+            executions.incrementAndGet();
+            return query;
+        });
+        CompletableFuture<String> second = singleFlight.execute("test", List.of("same"), () -> {
+            executions.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        CompletableFuture<String> other = singleFlight.execute("test", List.of("other"),
+                () -> CompletableFuture.completedFuture("other"));
+
+        query.complete("result");
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(second.get(1, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(other.get(1, TimeUnit.SECONDS)).isEqualTo("other");
+        assertThat(executions).hasValue(1);
+        assertThat(calls("coalesced")).isEqualTo(coalesced + 1);
+    }
+
+    @Test
+    public void finishedCallIsNotShared() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            singleFlight.execute("test", List.of("sequential"), () ->
+                    CompletableFuture.completedFuture(executions.incrementAndGet())).get(1, TimeUnit.SECONDS);
+        }
+
+        assertThat(executions).hasValue(2);
+    }
+
+    @Test
+    public void failureIsSharedAndKeyIsReleased() throws Exception {
+        CompletableFuture<String> query = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("test", List.of("failure"), () -> query);
+        CompletableFuture<String> second = singleFlight.execute("test", List.of("failure"), CompletableFuture::new);
+
+        query.completeExceptionally(new IllegalStateException("query failed"));
+
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(singleFlight.execute("test", List.of("failure"),
+                () -> CompletableFuture.completedFuture("retried")).get(1, TimeUnit.SECONDS)).isEqualTo("retried");
+    }
+
+    // deadline은 키(실행)마다 하나 -> 직접 실행한 호출과 기다리는 호출이 함께 끝나고 키가 비워진다.
+    @Test
+    public void deadlineAppliesToWholeFlightAndReleasesKey() throws Exception {
+        double timeouts = meterRegistry.counter("querydsl.single-flight.timeouts", "name", "test").count();
+        double coalesced = calls("coalesced");
+        CompletableFuture<String> query = new CompletableFuture<>();
+        CompletableFuture<String> slow = singleFlight.execute("test", List.of("timeout"), () -> query);
+        Thread.sleep(100);
+        // 늦게 붙은 호출도 실행의 deadline까지만 기다린다. (새로 실행했다면 끝나지 않는 future라서 timeout이 하나 더 생긴다.)
+        CompletableFuture<String> waiting = singleFlight.execute("test", List.of("timeout"), CompletableFuture::new);
+        assertThat(calls("coalesced")).isEqualTo(coalesced + 1);
+
+        assertThatThrownBy(() -> slow.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(TimeoutException.class);
+        assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(meterRegistry.counter("querydsl.single-flight.timeouts", "name", "test").count())
+                .isEqualTo(timeouts + 1);
+
+        // 끝나지 않은 실행의 키는 비워지고 다음 호출은 새로 실행된다. 늦게 끝난 결과는 버려진다.
+        assertThat(singleFlight.execute("test", List.of("timeout"),
+                () -> CompletableFuture.completedFuture("next")).get(1, TimeUnit.SECONDS)).isEqualTo("next");
+        query.complete("late");
+        assertThat(slow).isCompletedExceptionally();
+    }
+
+    // 함께 받은 실행의 SQL은 요청마다 더하고 예산도 요청마다 검사한다. -> 먼저 온 요청의 예산 초과가 다른 요청을 실패시키지 않는다.
+    @Test
+    public void sharedStatementsAreChargedToEachCaller() throws Exception {
+        CompletableFuture<String> query = new CompletableFuture<>();
+        AtomicReference<StatementCounts> flightCounts = new AtomicReference<>();
+        CompletableFuture<String> first;
+        CompletableFuture<String> second;
+        StatementCounts firstCounts;
+        StatementCounts secondCounts;
+        try (StatementCounter.Scope scope = statementCounter.start(1, true)) {
+            firstCounts = scope.getCounts();
+            first = singleFlight.execute("test", List.of("budget"), () -> {
+                flightCounts.set(statementCounter.currentCounts());
+                return query;
+            });
+        }
+        try (StatementCounter.Scope scope = statementCounter.start(5, true)) {
+            secondCounts = scope.getCounts();
+            second = singleFlight.execute("test", List.of("budget"), CompletableFuture::new);
+        }
+
+        // 실행은 먼저 온 요청의 범위가 아니라 따로 센다.
+        assertThat(flightCounts.get()).isNotSameAs(firstCounts);
+        flightCounts.get().statementExecuting("select 1");
+        flightCounts.get().statementExecuting("select 2");
+        query.complete("result");
+
+        assertThatThrownBy(() -> first.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(StatementBudgetExceededException.class);
+        assertThat(second.get(1, TimeUnit.SECONDS)).isEqualTo("result");
+        assertThat(firstCounts.getStatements()).isEqualTo(2);
+        assertThat(secondCounts.getStatements()).isEqualTo(2);
+    }
+
+    private double calls(String result) {
+        return meterRegistry.counter("querydsl.single-flight.calls", "name", "test", "result", result).count();
+    }
+}
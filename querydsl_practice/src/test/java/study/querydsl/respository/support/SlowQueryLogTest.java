@@ -0,0 +1,85 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import static study.querydsl.entity.QMember.member;
+
+// 모든 SQL이 느린 쿼리로 기록되도록 임계치를 0으로 둔다.
+@SpringBootTest(properties = {
+        "querydsl.slow-query.threshold=0ms",
+        "querydsl.slow-query.capacity=5"
+})
+@Transactional
+class SlowQueryLogTest {
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    SlowQueryLog slowQueryLog;
+
+    @BeforeEach
+    public void before() {
+        slowQueryLog.clear();
+    }
+
+    @Test
+    public void captureBoundSqlAndPlan() throws InterruptedException {
+        queryFactory
+                .selectFrom(member)
+                .where(member.username.eq("slowMember"))
+                .fetch();
+
+        SlowQuery slowQuery = awaitPlan(query -> query.getBoundSql().contains("'slowMember'"));
+        assertThat(slowQuery.getSql()).contains("?");
+        assertThat(slowQuery.getPlan()).containsIgnoringCase("member");
+    }
+
+    @Test
+    public void fullScan() throws InterruptedException {
+        queryFactory
+                .selectFrom(member)
+                .fetch();
+
+        SlowQuery slowQuery = awaitPlan(query -> query.getBoundSql().toLowerCase().startsWith("select")
+                && !query.getBoundSql().toLowerCase().contains("where"));
+        assertThat(slowQuery.isFullScan()).isTrue();
+    }
+
+    @Test
+    public void bounded() {
+        for (int i = 0; i < 10; i++) {
+            queryFactory
+                    .selectFrom(member)
+                    .where(member.age.eq(i))
+                    .fetch();
+        }
+
+        // 최근 5개만 남는다.
+        assertThat(slowQueryLog.getSlowQueries()).hasSize(5);
+        assertThat(slowQueryLog.getSlowQueries().get(0).getBoundSql()).contains("=9");
+    }
+
+    private SlowQuery awaitPlan(Predicate<SlowQuery> condition) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            Optional<SlowQuery> found = slowQueryLog.getSlowQueries().stream()
+                    .filter(condition)
+                    .filter(query -> query.getPlan() != null)
+                    .findFirst();
+            if (found.isPresent()) {
+                return found.get();
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("EXPLAIN was not captured: " + slowQueryLog.getSlowQueries());
+    }
+}
@@ -0,0 +1,183 @@
+package study.querydsl.respository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import static org.assertj.core.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.respository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/*
+ *  Member.team 은 지연 로딩 -> 페치 조인 없이 팀 이름을 사용하면 select가 더 실행된다.
+ *  (default_batch_fetch_size 때문에 팀마다가 아니라 in 절로 한 번)
+ *  팀은 2차 캐시 대상이라서 테스트마다 캐시를 비워준다.
+ * */
+@SpringBootTest
+@Transactional
+class StatementCounterTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    StatementCounter statementCounter;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    ParallelCountExecutor parallelCountExecutor;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.flush();
+        em.clear();
+        em.getEntityManagerFactory().getCache().evictAll();
+    }
+
+    @Test
+    public void lazyTeamAccessIsCounted() {
+        try (StatementCounter.Scope scope = statementCounter.start()) {
+            List<Member> members = queryFactory
+                    .selectFrom(member)
+                    .fetch();
+            members.forEach(findMember -> findMember.getTeam().getName());
+
+            // 회원 조회 1번 + 팀 조회 1번
+            assertThat(scope.getStatements()).isEqualTo(2);
+            assertThat(scope.getEntityLoads()).isEqualTo(5);
+            assertThatThrownBy(() -> scope.assertStatementsAtMost(1))
+                    .isInstanceOf(StatementBudgetExceededException.class)
+                    .hasMessageContaining("statements=2");
+        }
+    }
+
+    @Test
+    public void repeatedStatementIsReported() {
+        try (StatementCounter.Scope scope = statementCounter.start()) {
+            // 회원마다 조회 -> 같은 SQL이 3번 실행된다.
+            for (String username : List.of("member1", "member2", "member3")) {
+                queryFactory
+                        .selectFrom(member)
+                        .where(member.username.eq(username))
+                        .fetchOne();
+            }
+
+            assertThat(scope.getCounts().getRepeatedStatements(3)).hasSize(1).containsValue(3);
+            assertThat(scope.getCounts().toString()).contains("repeated=");
+        }
+    }
+
+    @Test
+    public void fetchJoinStaysWithinBudget() {
+        try (StatementCounter.Scope scope = statementCounter.start()) {
+            List<Member> members = queryFactory
+                    .selectFrom(member)
+                    .join(member.team, team).fetchJoin()
+                    .fetch();
+            members.forEach(findMember -> findMember.getTeam().getName());
+
+            scope.assertStatementsAtMost(1);
+            scope.assertCollectionInitializationsAtMost(0);
+        }
+    }
+
+    @Test
+    public void collectionInitializationIsCounted() {
+        try (StatementCounter.Scope scope = statementCounter.start()) {
+            List<Team> teams = queryFactory.selectFrom(team).fetch();
+            teams.forEach(findTeam -> findTeam.getMembers().size());
+
+            // 첫 번째 컬렉션을 초기화할 때 두 번째 팀의 컬렉션도 함께 읽는다.
+            assertThat(scope.getCollectionInitializations()).isEqualTo(1);
+            assertThat(scope.getStatements()).isEqualTo(2);
+            assertThatThrownBy(() -> scope.assertCollectionInitializationsAtMost(0))
+                    .isInstanceOf(StatementBudgetExceededException.class);
+        }
+    }
+
+    @Test
+    public void rejectsStatementOverBudget() {
+        try (StatementCounter.Scope scope = statementCounter.start(1, true)) {
+            Member findMember = queryFactory
+                    .selectFrom(member)
+                    .where(member.username.eq("member1"))
+                    .fetchOne();
+
+            // 두 번째 SQL(팀 조회)은 실행되지 않는다.
+            assertThatThrownBy(() -> findMember.getTeam().getName())
+                    .isInstanceOf(StatementBudgetExceededException.class);
+            assertThat(scope.getCounts().isOverBudget()).isTrue();
+        }
+    }
+
+    @Test
+    public void nestedAndAsyncStatementsAreCounted() throws Exception {
+        try (StatementCounter.Scope outer = statementCounter.start()) {
+            try (StatementCounter.Scope inner = statementCounter.start()) {
+                queryFactory.selectFrom(member).fetch();
+                assertThat(inner.getStatements()).isEqualTo(1);
+            }
+
+            // AsyncQueryExecutor 스레드에서 실행된 SQL도 요청한 스레드의 범위에 더해진다.
+            memberRepository.searchAsync(new MemberSearchCondition()).get(5, TimeUnit.SECONDS);
+            assertThat(outer.getStatements()).isEqualTo(2);
+        }
+        assertThat(statementCounter.currentCounts()).isNull();
+    }
+
+    // 병렬 count 스레드에서 실행된 SQL도 요청한 스레드의 범위에 더해진다. (별도의 커넥션이라 결과 값은 보지 않는다.)
+    @Test
+    public void parallelCountStatementsAreCounted() {
+        try (StatementCounter.Scope scope = statementCounter.start()) {
+            ParallelCountExecutor.PendingCount count = parallelCountExecutor.submit(
+                    queryFactory.select(member.count()).from(member), JPAQuery::fetchOne);
+            count.getAsLong();
+
+            assertThat(scope.getStatements()).isEqualTo(1);
+        }
+    }
+
+    // StreamingResponseBody 처럼 작업으로 넘길 수 없는 곳은 attach로 요청의 범위를 연결한다.
+    @Test
+    public void attachedScopeCountsOtherThread() throws Exception {
+        try (StatementCounter.Scope scope = statementCounter.start()) {
+            StatementCounts counts = statementCounter.currentCounts();
+            CompletableFuture.runAsync(() -> {
+                StatementCounter.Scope attached = statementCounter.attach(counts);
+                try {
+                    queryFactory.selectFrom(member).fetch();
+                } finally {
+                    attached.close();
+                }
+                assertThat(statementCounter.currentCounts()).isNull();
+            }).get(5, TimeUnit.SECONDS);
+
+            assertThat(scope.getStatements()).isEqualTo(1);
+        }
+    }
+}